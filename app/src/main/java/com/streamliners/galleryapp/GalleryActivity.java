@@ -4,13 +4,12 @@ import android.Manifest;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.content.pm.ActivityInfo;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -19,8 +18,10 @@ import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.SearchView;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -28,12 +29,17 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.streamliners.galleryapp.adapters.ItemAdapter;
 import com.streamliners.galleryapp.databinding.ActivityGalleryBinding;
+import com.streamliners.galleryapp.databinding.DialogBatchIngestBinding;
+import com.streamliners.galleryapp.helpers.BatchIngestHelper;
+import com.streamliners.galleryapp.helpers.ItemChangeTracker;
+import com.streamliners.galleryapp.helpers.ItemPagingSource;
+import com.streamliners.galleryapp.helpers.ShareCardHelper;
+import com.streamliners.galleryapp.helpers.ThumbnailPreloader;
 import com.streamliners.galleryapp.helpers.databaseHelper;
 import com.streamliners.galleryapp.models.Item;
 
-import java.io.OutputStream;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class GalleryActivity extends AppCompatActivity {
     // Request code for fetch image from gallery
@@ -42,8 +48,8 @@ public class GalleryActivity extends AppCompatActivity {
     private static final int RC_PHOTO_CAPTURE = 2;
     // Request code for the permission
     private static final int CAMERA_PERMISSION_CODE = 1000;
-    // Request code for the permission
-    private static final int SHARE_PERMISSION_CODE = 1001;
+    // Delay after the last key typed before searching
+    private static final long SEARCH_DELAY_MILLIS = 250;
 
     // For the image clicked through camera
     private Uri imageUri;
@@ -52,8 +58,8 @@ public class GalleryActivity extends AppCompatActivity {
 
     // Binding of the layout
     private ActivityGalleryBinding mainBinding;
-    // List of the items
-    private List<Item> listOfItems = new ArrayList<>();
+    // Source of the items loaded page by page
+    private ItemPagingSource itemSource;
     // Shared preferences
     private SharedPreferences preferences;
     // adapter for the list view
@@ -62,10 +68,29 @@ public class GalleryActivity extends AppCompatActivity {
     private ItemTouchHelper itemTouchHelper;
     // For the database helper
     private databaseHelper dbHelper;
+    // For the changes to be saved in the database
+    private ItemChangeTracker changeTracker;
 
     // For the options menu
     private Menu menu;
 
+    // Holder of the dialog and batch work, kept across the recreation of the activity
+    private IngestViewModel viewModel;
+    // Dialog showing the progress of the batch
+    private AlertDialog batchProgressDialog;
+    // Dialog adding or editing the image, showing the state of the view model
+    private ImageDialog imageDialog;
+
+    // Loader of the card images ahead of the scroll
+    private ThumbnailPreloader thumbnailPreloader;
+
+    // Handler to delay the search till the typing pauses
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    // Latest text typed in the search view
+    private String pendingSearchText = "";
+    // Search for the latest text typed
+    private final Runnable searchRunnable = () -> adapter.filter(pendingSearchText);
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -78,11 +103,21 @@ public class GalleryActivity extends AppCompatActivity {
         setupFab();
 
         // Initializing the helper
-        dbHelper = new databaseHelper(this);
-        getDataFromSqliteDatabase();
+        dbHelper = ((MyApp) getApplicationContext()).getDatabaseHelper();
+        changeTracker = new ItemChangeTracker(dbHelper);
+        itemSource = new ItemPagingSource(dbHelper, changeTracker,
+                ((MyApp) getApplicationContext()).getDatabaseExecutor());
 
         // Setup the recycler view for the items list
         setupRecyclerView();
+
+        // Loading the first page in the background
+        itemSource.reload();
+
+        // Showing the work kept by the view model, still running if the activity is recreated
+        viewModel = new ViewModelProvider(this).get(IngestViewModel.class);
+        observeImageDialog();
+        observeBatch();
     }
 
     @Override
@@ -112,12 +147,6 @@ public class GalleryActivity extends AppCompatActivity {
             } else {
                 Toast.makeText(this, "Camera or Storage permission Denied", Toast.LENGTH_SHORT).show();
             }
-        } else if (requestCode == SHARE_PERMISSION_CODE) {
-            if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-                shareImage();
-            } else {
-                Toast.makeText(this, "Storage permission Denied", Toast.LENGTH_SHORT).show();
-            }
         }
     }
 
@@ -135,13 +164,18 @@ public class GalleryActivity extends AppCompatActivity {
         searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
+                // Searching at once without waiting
+                searchHandler.removeCallbacks(searchRunnable);
                 adapter.filter(query);
                 return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                adapter.filter(newText);
+                // Searching only when the typing pauses, older text is never searched
+                pendingSearchText = newText;
+                searchHandler.removeCallbacks(searchRunnable);
+                searchHandler.postDelayed(searchRunnable, SEARCH_DELAY_MILLIS);
                 return false;
             }
         });
@@ -157,6 +191,9 @@ public class GalleryActivity extends AppCompatActivity {
             adapter.isDragAndDropEnabled = !adapter.isDragAndDropEnabled;
             changeDragAndDrop(adapter.isDragAndDropEnabled);
             return true;
+        } else if (item.getItemId() == R.id.add_images_in_batch) {
+            showBatchIngestDialog();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -168,63 +205,52 @@ public class GalleryActivity extends AppCompatActivity {
         // Check for the menu item selected
         if (item.getItemId() == R.id.edit_item) {
             // Show dialog for image editing
-            showImageDialog(adapter.visibleItemsList.get(adapter.index));
+            Item selectedItem = adapter.getItem(adapter.index);
+            if (selectedItem != null) {
+                showImageDialog(selectedItem);
+            }
             return true;
         } else if (item.getItemId() == R.id.share_item) {
-            sharingItem();
+            shareImage();
             return true;
         }
         return super.onContextItemSelected(item);
     }
 
     /**
-     * To get the required permissions to save the bitmap and then share it
+     * To share the card of the item selected
+     * The card is made in the background, or reused if the same card was shared before
      */
-    private void sharingItem() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (checkSelfPermission(Manifest.permission.WRITE_EXTERNAL_STORAGE) == PackageManager.PERMISSION_DENIED) {
-                String[] permission = {Manifest.permission.WRITE_EXTERNAL_STORAGE};
+    private void shareImage() {
+        Item selectedItem = adapter.getItem(adapter.index);
 
-                requestPermissions(permission, SHARE_PERMISSION_CODE);
-            }
-            else {
-                shareImage();
-            }
+        // Guard Code
+        if (selectedItem == null) {
+            return;
         }
-        else {
-            shareImage();
-        }
-    }
-
-    /**
-     * To share the bitmap of the particular item card
-     */
-    private void shareImage() {
-        // Get the screen shot of the card view
-        Bitmap icon = getShot(adapter.itemBinding.cardView);
 
-        // Calling the intent to share the bitmap
-        Intent share = new Intent(Intent.ACTION_SEND);
-        share.setType("image/jpeg");
+        ((MyApp) getApplicationContext()).getShareCardHelper()
+                .getCard(selectedItem, new ShareCardHelper.OnCompleteListener() {
+                    @Override
+                    public void onSuccess(Uri uri, String mimeType) {
+                        // Guard Code
+                        if (isFinishing() || isDestroyed()) {
+                            return;
+                        }
 
-        ContentValues values = new ContentValues();
-        values.put(MediaStore.Images.Media.TITLE, "title");
-        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-        Uri uri = getContentResolver().insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
-                values);
-
-
-        OutputStream outputStream;
-        try {
-            outputStream = getContentResolver().openOutputStream(uri);
-            icon.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-            outputStream.close();
-        } catch (Exception e) {
-            System.err.println(e.toString());
-        }
+                        // Calling the intent to share the card
+                        Intent share = new Intent(Intent.ACTION_SEND);
+                        share.setType(mimeType);
+                        share.putExtra(Intent.EXTRA_STREAM, uri);
+                        share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                        startActivity(Intent.createChooser(share, "Share Image"));
+                    }
 
-        share.putExtra(Intent.EXTRA_STREAM, uri);
-        startActivity(Intent.createChooser(share, "Share Image"));
+                    @Override
+                    public void onError(String error) {
+                        Toast.makeText(GalleryActivity.this, error, Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
 
     // add image methods
@@ -263,31 +289,8 @@ public class GalleryActivity extends AppCompatActivity {
      * To show the dialog to add image
      */
     private void addImageFromNetwork() {
-        // To set the screen orientation locked
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
-
-        new ImageDialog()
-                .showDialog(this, new ImageDialog.OnCompleteListener() {
-                    @Override
-                    public void OnImageAddedSuccess(Item item) {
-                        // Notify the adapter
-                        adapter.add(item);
-
-                        // To set the screen orientation according to the user
-                        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_FULL_USER);
-                    }
-
-                    @Override
-                    public void OnError(String error) {
-                        new MaterialAlertDialogBuilder(GalleryActivity.this)
-                                .setTitle("Error")
-                                .setMessage(error)
-                                .show();
-
-                        // To set the screen orientation according to the user
-                        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_FULL_USER);
-                    }
-                });
+        // The dialog is shown by the observer of its state
+        viewModel.openAddDialog();
     }
 
     /**
@@ -295,39 +298,149 @@ public class GalleryActivity extends AppCompatActivity {
      * For: Camera, Device Storage, Edit purpose
      */
     private void showImageDialog(Item selectedItem) {
-        // To set the screen orientation locked
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
+        // The dialog is shown by the observer of its state
+        viewModel.openDialog(selectedItem);
+    }
 
-        new ImageDialog()
-                .showDialog(this, selectedItem, new ImageDialog.OnCompleteListener() {
-                    @Override
-                    public void OnImageAddedSuccess(Item item) {
-                        if (selectedItem.label == null) {
-                            // Notify the adapter
-                            adapter.add(item);
-                        } else {
-                            // Notify the adapter
-                            adapter.edit(adapter.index, item);
-                        }
+    /**
+     * To show the image dialog whenever the view model has one open
+     * The state is kept by the view model, so the dialog open before the recreation of the
+     * activity is shown again with its work still running
+     */
+    private void observeImageDialog() {
+        viewModel.getDialogState().observe(this, state -> {
+            // Dialog closed
+            if (state == null) {
+                imageDialog = null;
+                return;
+            }
 
-                        // To set the screen orientation according to the user
-                        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_FULL_USER);
-                    }
+            // Guard Code
+            if (imageDialog != null) {
+                return;
+            }
 
-                    @Override
-                    public void OnError(String error) {
-                        new MaterialAlertDialogBuilder(GalleryActivity.this)
-                                .setTitle("Error")
-                                .setMessage(error)
-                                .show();
-
-                        // To set the screen orientation according to the user
-                        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_FULL_USER);
+            imageDialog = new ImageDialog();
+            imageDialog.showDialog(this, viewModel, new ImageDialog.OnCompleteListener() {
+                @Override
+                public void OnImageAddedSuccess(Item oldItem, Item item) {
+                    if (oldItem == null) {
+                        // Notify the adapter
+                        adapter.add(item);
+                    } else {
+                        // Notify the adapter
+                        adapter.edit(oldItem, item);
                     }
-                });
+                }
+
+                @Override
+                public void OnError(String error) {
+                    new MaterialAlertDialogBuilder(GalleryActivity.this)
+                            .setTitle("Error")
+                            .setMessage(error)
+                            .show();
+                }
+            });
+        });
     }
 
-    // Floating action buttons methods
+    /**
+     * To show the dialog asking the number of random images and their dimensions
+     */
+    private void showBatchIngestDialog() {
+        DialogBatchIngestBinding dialogBinding = DialogBatchIngestBinding.inflate(getLayoutInflater());
+
+        AlertDialog dialog = new MaterialAlertDialogBuilder(this, R.style.CustomDialogTheme)
+                .setView(dialogBinding.getRoot())
+                .show();
+
+        dialogBinding.buttonStart.setOnClickListener(v -> {
+            dialogBinding.countTextView.setError(null);
+            dialogBinding.sizesTextView.setError(null);
+
+            // getting the count and the dimensions from the text fields
+            String count = dialogBinding.countTextView.getEditText().getText().toString().trim();
+            String sizes = dialogBinding.sizesTextView.getEditText().getText().toString().trim();
+
+            // Guard Code
+            if (count.isEmpty() || Integer.parseInt(count) == 0) {
+                dialogBinding.countTextView.setError("Enter the number of images");
+                return;
+            }
+
+            List<int[]> parsedSizes;
+            try {
+                parsedSizes = BatchIngestHelper.parseSizes(sizes);
+            } catch (IllegalArgumentException e) {
+                dialogBinding.sizesTextView.setError("Enter dimensions like 400x300, 500");
+                return;
+            }
+
+            dialog.dismiss();
+            addImagesInBatch(Integer.parseInt(count), parsedSizes);
+        });
+    }
+
+    /**
+     * To add the random images through the batch pipeline
+     * @param count number of the images
+     * @param sizes dimensions of the images as {width, height}, used in turn
+     */
+    private void addImagesInBatch(int count, List<int[]> sizes) {
+        // The progress is shown by the observers of the batch
+        viewModel.startBatch(count, sizes);
+    }
+
+    /**
+     * To show the progress of the batch kept by the view model and add its items to the list
+     */
+    private void observeBatch() {
+        viewModel.getBatchProgress().observe(this, progress -> {
+            // Batch over
+            if (progress == null) {
+                if (batchProgressDialog != null) {
+                    batchProgressDialog.dismiss();
+                    batchProgressDialog = null;
+                }
+                return;
+            }
+
+            if (batchProgressDialog == null) {
+                batchProgressDialog = new MaterialAlertDialogBuilder(this)
+                        .setTitle(R.string.adding_images)
+                        .setCancelable(false)
+                        .setNegativeButton("Cancel", (dialog, which) -> viewModel.cancelBatch())
+                        .show();
+            }
+
+            batchProgressDialog.setMessage(String.format(Locale.getDefault(), "%d / %d added, %d failed\n\n%s",
+                    progress.added, progress.total, progress.failed, progress.getThroughputText()));
+        });
+
+        viewModel.hasReadyItems().observe(this, hasReadyItems -> {
+            // Guard Code
+            if (!hasReadyItems) {
+                return;
+            }
+
+            // Notify the adapter once for the whole batch
+            adapter.addAll(viewModel.takeReadyItems());
+
+            // Saving the batch without waiting for the activity to pause
+            itemSource.flush();
+        });
+
+        viewModel.getBatchResult().observe(this, progress -> {
+            // Guard Code
+            if (progress == null) {
+                return;
+            }
+
+            Toast.makeText(this, String.format(Locale.getDefault(), "%d items added, %d failed",
+                    progress.added, progress.failed), Toast.LENGTH_SHORT).show();
+            viewModel.clearBatchResult();
+        });
+    }
 
     /**
      * To setup the Floating Action Buttons
@@ -419,7 +532,7 @@ public class GalleryActivity extends AppCompatActivity {
      */
     private void setupRecyclerView() {
         // Initializing adapter for the list view
-        adapter = new ItemAdapter(this, listOfItems, size -> {
+        adapter = new ItemAdapter(this, itemSource, changeTracker, size -> {
             if (size == 0) {
                 mainBinding.noItemTextView.setVisibility(View.VISIBLE);
                 return;
@@ -433,6 +546,11 @@ public class GalleryActivity extends AppCompatActivity {
         // Set the adapter to the list view
         mainBinding.list.setAdapter(adapter);
 
+        // Loading the card images ahead of the scroll
+        thumbnailPreloader = new ThumbnailPreloader(this, adapter,
+                ThumbnailPreloader.DEFAULT_LOOKAHEAD, ThumbnailPreloader.DEFAULT_MAX_CONCURRENT);
+        mainBinding.list.addOnScrollListener(thumbnailPreloader);
+
         // To setup the touch listener
         changeDragAndDrop(false);
     }
@@ -448,8 +566,7 @@ public class GalleryActivity extends AppCompatActivity {
                 int toPosition = target.getAbsoluteAdapterPosition();
 
                 // Swap the items
-                adapter.move(fromPosition, toPosition);
-                return true;
+                return adapter.move(fromPosition, toPosition);
             }
 
             @Override
@@ -466,10 +583,14 @@ public class GalleryActivity extends AppCompatActivity {
 
         // Check the feature validity
         if (toEnable) {
+            // Moving saves the order of all the items, so they are shown unsorted and unfiltered
+            showAllItems();
+
             // Changing the User Interface
             menu.getItem(0).setIcon(R.drawable.ic_done);
             menu.getItem(1).setVisible(false);
             menu.getItem(2).setVisible(false);
+            menu.getItem(3).setVisible(false);
             setTitle("Drag and Drop");
             mainBinding.fabMain.animate().alpha(0);
             // Because the code will immediately make the button invisible that's why delay
@@ -485,6 +606,7 @@ public class GalleryActivity extends AppCompatActivity {
                 menu.getItem(0).setIcon(R.drawable.ic_drag_indicator);
                 menu.getItem(1).setVisible(true);
                 menu.getItem(2).setVisible(true);
+                menu.getItem(3).setVisible(true);
                 setTitle("Gallery");
                 mainBinding.fabMain.setVisibility(View.VISIBLE);
                 mainBinding.fabMain.animate().alpha(1);
@@ -502,15 +624,18 @@ public class GalleryActivity extends AppCompatActivity {
     }
 
     /**
-     * To get the screen shot of the complete view
-     * @param view view for which the screen shot has to taken
-     * @return bitmap image of the complete view
+     * To clear the search and the sort, showing all the items in their own order
      */
-    public Bitmap getShot(View view) {
-        view.setDrawingCacheEnabled(true);
-        Bitmap bitmap = Bitmap.createBitmap(view.getDrawingCache());
-        view.setDrawingCacheEnabled(false);
-        return bitmap;
+    private void showAllItems() {
+        // Dropping the search waiting to run
+        searchHandler.removeCallbacks(searchRunnable);
+        pendingSearchText = "";
+
+        SearchView searchView = (SearchView) menu.findItem(R.id.search).getActionView();
+        searchView.setQuery("", false);
+        searchView.setIconified(true);
+
+        adapter.clearQuery();
     }
 
     /**
@@ -528,24 +653,31 @@ public class GalleryActivity extends AppCompatActivity {
         startActivityForResult(intent, RC_PHOTO_CAPTURE);
     }
 
-    /**
-     * To restore the data using Sqlite database
-     */
-    private void getDataFromSqliteDatabase() {
-        // Fetching the list of items from the database
-        listOfItems = dbHelper.fetchItems();
-    }
-
     @Override
     protected void onPause() {
         super.onPause();
 
-        // Firstly clear all previous items in the database table
-        dbHelper.clearAllItems();
+        // Saving only the items changed since the last save
+        itemSource.flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
 
-        // Adding each item in the database table
-        for (Item item : listOfItems) {
-            dbHelper.addItem(item);
+        // Dropping the search waiting to run
+        searchHandler.removeCallbacks(searchRunnable);
+
+        // Loads ahead of the scroll are of no use without the list
+        thumbnailPreloader.cancel();
+
+        // Windows of this activity are dismissed, the work they show goes on in the view model
+        // and is stopped by it only when the activity is finished
+        if (imageDialog != null) {
+            imageDialog.dismiss();
+        }
+        if (batchProgressDialog != null) {
+            batchProgressDialog.dismiss();
         }
     }
 }
\ No newline at end of file
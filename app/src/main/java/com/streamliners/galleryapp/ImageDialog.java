@@ -5,6 +5,8 @@ import android.content.Context;
 import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
@@ -15,6 +17,8 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
 
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.request.target.CustomTarget;
@@ -24,7 +28,6 @@ import com.google.android.material.dialog.MaterialAlertDialogBuilder;
 import com.streamliners.galleryapp.databinding.ChipColorBinding;
 import com.streamliners.galleryapp.databinding.ChipLabelBinding;
 import com.streamliners.galleryapp.databinding.DialogAddImageBinding;
-import com.streamliners.galleryapp.helpers.ItemHelper;
 import com.streamliners.galleryapp.helpers.MachineLearningModelHelper;
 import com.streamliners.galleryapp.models.Item;
 
@@ -33,14 +36,18 @@ import java.util.Set;
 
 /**
  * Represents the class to show a add image dialog
+ * The dialog only shows the state kept by the view model, so a new dialog shown after
+ * the activity is recreated continues the work of the previous one
  */
-public class ImageDialog implements ItemHelper.OnCompleteListener {
+public class ImageDialog {
     // For the application object
     private MyApp app;
     // Context of the main activity
     private Context mContext;
     // Listener to call for image addition
     private OnCompleteListener mListener;
+    // Holder of the work of the dialog
+    private IngestViewModel viewModel;
     // Binding of the dialog view
     private DialogAddImageBinding dialogBinding;
     // Inflater to inflate the layouts
@@ -48,128 +55,101 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
 
     // Url of the image
     private String url;
+    // Item shown, null for a random image
+    private Item item;
     // To check whether the custom is set or not
     private boolean isCustomLabel;
     // Object of the alert dialog
     private AlertDialog alertDialog;
+    // Observer of the state, removed when the dialog goes
+    private Observer<IngestViewModel.DialogState> stateObserver;
+    // Step shown, to show each step once
+    private int shownStatus = -1;
+    // Target of the preview load, null until it starts
+    private CustomTarget<Bitmap> previewTarget;
+    // To clear the loads outside the callbacks of Glide
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // Showing the data methods
 
     /**
-     * To inflate dialog's layout and then show the dialog inflated
-     * @param context context of the main activity
+     * To inflate dialog's layout and then show the dialog for the state of the view model
+     * @param activity the main activity
+     * @param viewModel holder of the work of the dialog, its dialog is to be open
      * @param listener listener for the callbacks
      */
-    public void showDialog(Context context, OnCompleteListener listener) {
-        this.mContext = context;
+    public void showDialog(AppCompatActivity activity, IngestViewModel viewModel, OnCompleteListener listener) {
+        this.mContext = activity;
         this.mListener = listener;
+        this.viewModel = viewModel;
 
         app = (MyApp) mContext.getApplicationContext();
 
-        // Checking for the activity from its context and to inflate dialog's layout
-        if (mContext instanceof GalleryActivity) {
-            // Initialising the inflater
-            inflater = ((GalleryActivity) mContext).getLayoutInflater();
-            
-            // Initialising the dialog binding
-            dialogBinding = DialogAddImageBinding.inflate(inflater);
-        } else {
-            // Dismiss the dialog
-            alertDialog.dismiss();
-            
-            // Call the listener for error
-            mListener.OnError("Cast Exception");
-            
-            // And return the function
-            return;
-        }
+        // Initialising the inflater and the dialog binding
+        inflater = activity.getLayoutInflater();
+        dialogBinding = DialogAddImageBinding.inflate(inflater);
 
         // Creating and showing the dialog box and set to non cancellable
         alertDialog = new MaterialAlertDialogBuilder(mContext, R.style.CustomDialogTheme)
                 .setCancelable(false)
                 .setView(dialogBinding.getRoot())
+                .setOnDismissListener(dialog -> onDismissed())
                 .show();
 
-        // To handle events
-        handleDimensionsInput();
+        // Showing every step of the work, the current one at once
+        stateObserver = this::showState;
+        viewModel.getDialogState().observe(activity, stateObserver);
     }
 
     /**
-     * To show the dialog for editing purpose
-     * @param context context of the main activity
-     * @param item item ro be edited
-     * @param listener listener for the callbacks
+     * To show the step the work of the dialog is at
+     * @param state state of the dialog, null once it is closed
      */
-    public void showDialog(Context context, Item item, OnCompleteListener listener) {
-        this.mContext = context;
-        this.mListener = listener;
-
-        app = (MyApp) mContext.getApplicationContext();
-
-        // Checking for the activity from its context and to inflate dialog's layout
-        if (mContext instanceof GalleryActivity) {
-            // Initialising the inflater
-            inflater = ((GalleryActivity) mContext).getLayoutInflater();
-
-            // Initialising the dialog binding
-            dialogBinding = DialogAddImageBinding.inflate(inflater);
-        } else {
-            // Dismiss the dialog
-            alertDialog.dismiss();
-
-            // Call the listener for error
-            mListener.OnError("Cast Exception");
-
-            // And return the function
+    private void showState(IngestViewModel.DialogState state) {
+        // Closed, by this dialog or a new one
+        if (state == null) {
+            dismiss();
             return;
         }
 
-        // Creating and showing the dialog box and set to non cancellable
-        alertDialog = new MaterialAlertDialogBuilder(mContext, R.style.CustomDialogTheme)
-                .setCancelable(false)
-                .setView(dialogBinding.getRoot())
-                .show();
-
-        // Show the loader
-        app.showLoadingDialog(mContext);
-
-        Glide.with(mContext)
-                .asBitmap()
-                .load(item.url)
-                .into(new CustomTarget<Bitmap>() {
-                    @Override
-                    public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
-                        new MachineLearningModelHelper()
-                                .getData(resource, new MachineLearningModelHelper.OnCompleteListener() {
-                                    @Override
-                                    public void onSuccess(Set<Integer> colors, List<String> labels) {
-                                        // To show the data in dialog box
-                                        showData(item.url, colors, labels);
-
-                                        // Set the preselected parameters for the item
-                                        preSelectParameters(item);
-                                    }
-
-                                    @Override
-                                    public void onError(String error) {
-                                        mListener.OnError(error);
-                                    }
-                                });
-                    }
+        // Guard Code
+        if (state.status == shownStatus) {
+            return;
+        }
+        shownStatus = state.status;
 
-                    @Override
-                    public void onLoadCleared(@Nullable Drawable placeholder) {
-                    }
-                });
+        switch (state.status) {
+            case IngestViewModel.DialogState.STATUS_INPUT:
+                handleDimensionsInput();
+                break;
+            case IngestViewModel.DialogState.STATUS_LOADING:
+                // Show the loader, cancelling it closes the dialog
+                dialogBinding.inputDimensionsRoot.setVisibility(View.GONE);
+                app.showLoadingDialog(mContext, viewModel::closeDialog);
+                break;
+            case IngestViewModel.DialogState.STATUS_READY:
+                item = state.item;
+                showData(state.url, state.colors, state.labels, state.preview);
+                if (item != null) {
+                    preSelectParameters(item);
+                }
+                break;
+            case IngestViewModel.DialogState.STATUS_FAILED:
+                // Callback for the error, the dialog is closed then
+                mListener.OnError(state.error);
+                viewModel.closeDialog();
+                break;
+        }
     }
 
     /**
-     * To inflate dialog's layout for editing purpose and then show the dialog inflated
+     * To inflate dialog's layout and then show the dialog inflated
      * @param url url of the image in the cache
      * @param colors major colors in the image
      * @param labels labels of the image
+     * @param preview image already loaded, null to load it from the url
      */
-    private void showData(String url, Set<Integer> colors, List<String> labels) {
+    private void showData(String url, Set<Integer> colors, List<String> labels, @Nullable Bitmap preview) {
         // Set the url of the image
         this.url = url;
 
@@ -182,9 +162,27 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
         handleAddImageEvent();
 
         // To set the image to the image view in binding
-        Glide.with(mContext)
-                .asBitmap()
-                .load(url)
+        if (preview != null) {
+            dialogBinding.imageView.setImageBitmap(preview);
+        } else {
+            loadPreview(url);
+        }
+
+        // Hide the loader
+        app.hideLoadingDialog();
+
+        // Make the image contents visible
+        dialogBinding.addImageRoot.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * To load the image into the image view of the dialog
+     * Only for the images whose stored analysis is shown, the others show the image analysed
+     * @param url url of the image
+     */
+    private void loadPreview(String url) {
+        // Same size as the images analysed, as every preview of the dialog
+        previewTarget = MachineLearningModelHelper.loadForAnalysis(app, url)
                 .into(new CustomTarget<Bitmap>() {
                     @Override
                     public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
@@ -195,13 +193,13 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
                     @Override
                     public void onLoadCleared(@Nullable Drawable placeholder) {
                     }
-                });
 
-        // Hide the loader
-        app.hideLoadingDialog();
-
-        // Make the image contents visible
-        dialogBinding.addImageRoot.setVisibility(View.VISIBLE);
+                    @Override
+                    public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                        // Image is gone, its stored analysis is no longer valid
+                        app.getAnalysisCache().invalidate(url);
+                    }
+                });
     }
     
     // Handling Events methods
@@ -235,20 +233,15 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
                 // Hiding keyboard
                 hideKeyboard();
 
-                // make the input dialog gone and loader visible
+                // make the input dialog gone
                 dialogBinding.inputDimensionsRoot.setVisibility(View.GONE);
-                app.showLoadingDialog(mContext);
 
-                // To fetch square image
-                if (width.isEmpty()) {
-                    fetchRandomImage(Integer.parseInt(height));
-                } else if (height.isEmpty()) {
-                    fetchRandomImage(Integer.parseInt(width));
-                }
-                // To fetch Rectangular image
-                else{
-                    fetchRandomImage(Integer.parseInt(width), Integer.parseInt(height));
-                }
+                // Square image if only one side is given
+                int imageWidth = Integer.parseInt(width.isEmpty() ? height : width);
+                int imageHeight = Integer.parseInt(height.isEmpty() ? width : height);
+
+                // Fetched by the view model, which keeps it across the recreation of the activity
+                viewModel.fetchRandomImage(imageWidth, imageHeight);
             }
         });
     }
@@ -292,11 +285,19 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
                 int color = ((Chip) dialogBinding.colorChips.findViewById(colorChipId)).
                         getChipBackgroundColor().getDefaultColor();
 
+                // Item edited, if it was added before
+                Item oldItem = item != null && item.label != null ? item : null;
+
+                // Making the thumbnail of a new image while the list shows it
+                if (oldItem == null) {
+                    app.getThumbnailStore().create(url);
+                }
+
                 // Callback when all the parameter are accepted
-                mListener.OnImageAddedSuccess(new Item(url, color, label));
+                mListener.OnImageAddedSuccess(oldItem, new Item(url, color, label));
 
-                // Dismiss the dialog box
-                alertDialog.dismiss();
+                // Closing the dialog, which dismisses it
+                viewModel.closeDialog();
             }
         });
     }
@@ -321,27 +322,6 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
         });
     }
 
-    // Image fetching methods
-    
-    /**
-     * To fetch any rectangle image
-     * @param width width of the image
-     * @param height height of the image
-     */
-    private void fetchRandomImage(int width, int height) {
-        new ItemHelper()
-                .fetchData(mContext, width, height, this);
-    }
-
-    /**
-     * To fetch any square image
-     * @param side side of the square image
-     */
-    private void fetchRandomImage(int side) {
-        new ItemHelper()
-                .fetchData(mContext, side, this);
-    }
-
     // Utility methods
 
     /**
@@ -384,6 +364,42 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
         }
     }
     
+    /**
+     * To dismiss the dialog without stopping its work, for when the activity is recreated
+     * The work is stopped by closing the dialog in the view model
+     */
+    public void dismiss() {
+        if (alertDialog != null) {
+            alertDialog.dismiss();
+            alertDialog = null;
+        }
+    }
+
+    /**
+     * To let go of the views and the preview once the dialog is gone
+     */
+    private void onDismissed() {
+        viewModel.getDialogState().removeObserver(stateObserver);
+
+        // The preview is no longer shown, the one analysed is released by the view model
+        dialogBinding.imageView.setImageDrawable(null);
+        if (previewTarget != null) {
+            clearLater(previewTarget);
+            previewTarget = null;
+        }
+
+        // Dismissed while fetching
+        app.hideLoadingDialog();
+    }
+
+    /**
+     * To give the image back to Glide once the current callback is over
+     * @param target target of the load
+     */
+    private void clearLater(CustomTarget<Bitmap> target) {
+        mainHandler.post(() -> Glide.with(app).clear(target));
+    }
+
     /**
      * To hide the keyboard after taking input
      */
@@ -450,35 +466,16 @@ public class ImageDialog implements ItemHelper.OnCompleteListener {
         }
     }
 
-    // Implementing methods of callbacks for image fetching
-
-    @Override
-    public void onSuccess(String url, Set<Integer> colors, List<String> labels) {
-        // To show the dialog box with the data
-        showData(url, colors, labels);
-    }
-
-    @Override
-    public void onError(String error) {
-        // Callback when all the parameter are accepted
-        mListener.OnError(error);
-
-        // Dismiss the dialog box
-        alertDialog.dismiss();
-
-        // Dismiss the loader
-        app.hideLoadingDialog();
-    }
-
     /**
      * Callbacks for the dialog box completion
      */
     interface OnCompleteListener {
         /**
          * When image has to be added in the list successfully
+         * @param oldItem item edited, null if the image is a new one
          * @param item item of the image
          */
-        void OnImageAddedSuccess(Item item);
+        void OnImageAddedSuccess(@Nullable Item oldItem, Item item);
 
         /**
          * When error occurs for the specified reasons
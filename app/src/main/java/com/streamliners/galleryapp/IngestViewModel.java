@@ -0,0 +1,382 @@
+package com.streamliners.galleryapp;
+
+import android.app.Application;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.streamliners.galleryapp.helpers.AnalysisCacheHelper;
+import com.streamliners.galleryapp.helpers.BatchIngestHelper;
+import com.streamliners.galleryapp.helpers.CancellationToken;
+import com.streamliners.galleryapp.helpers.ImagePoolHelper;
+import com.streamliners.galleryapp.helpers.ItemHelper;
+import com.streamliners.galleryapp.helpers.MachineLearningModelHelper;
+import com.streamliners.galleryapp.helpers.SharedBitmap;
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Holds the work of adding the images for the gallery activity
+ * It survives the configuration changes, so the activity and the dialog recreated after a
+ * rotation attach to the running fetch instead of starting it again
+ * All the methods are to be called on the main thread
+ */
+public class IngestViewModel extends AndroidViewModel {
+    // For the application object
+    private final MyApp app;
+
+    // State of the image dialog, null when no dialog is open
+    private final MutableLiveData<DialogState> dialogState = new MutableLiveData<>();
+    // Cancellation of the work of the open dialog, null when no dialog is open
+    private CancellationToken dialogToken;
+    // Image taken from the pool for the open dialog, released when it closes
+    private ImagePoolHelper.PooledImage pooledImage;
+    // Image decoded for the open dialog, analysed and then shown, released when it closes
+    private SharedBitmap dialogBitmap;
+
+    // For adding many random images at once
+    private BatchIngestHelper batchIngestHelper;
+    // Progress of the running batch, null when no batch runs
+    private final MutableLiveData<BatchIngestHelper.Progress> batchProgress = new MutableLiveData<>();
+    // Final progress of the batch just over, null once it is shown
+    private final MutableLiveData<BatchIngestHelper.Progress> batchResult = new MutableLiveData<>();
+    // Items of the batch not yet added to the list
+    private final List<Item> readyItems = new ArrayList<>();
+    // To check whether there are items to be added to the list
+    private final MutableLiveData<Boolean> hasReadyItems = new MutableLiveData<>(false);
+
+    public IngestViewModel(@NonNull Application application) {
+        super(application);
+        app = (MyApp) application;
+    }
+
+    // Image dialog methods
+
+    /**
+     * To get the state of the image dialog
+     * @return state, null when no dialog is open
+     */
+    public LiveData<DialogState> getDialogState() {
+        return dialogState;
+    }
+
+    /**
+     * To open the dialog asking the dimensions of a random image
+     */
+    public void openAddDialog() {
+        openDialog();
+        dialogState.setValue(DialogState.input());
+    }
+
+    /**
+     * To open the dialog for the image already in storage
+     * For: Camera, Device Storage, Edit purpose
+     * @param item item whose image is shown, its label is null if it is not added yet
+     */
+    public void openDialog(Item item) {
+        openDialog();
+        dialogState.setValue(DialogState.loading(item));
+        CancellationToken token = dialogToken;
+
+        // Fresh image, its content is checked against the stored analyses after loading
+        if (item.label == null) {
+            analyseImage(item, token);
+            return;
+        }
+
+        // Image already added, its stored analysis is shown without loading it
+        app.getAnalysisCache()
+                .getData(item.url, new AnalysisCacheHelper.OnFetchListener() {
+                    @Override
+                    public void onFound(Set<Integer> colors, List<String> labels) {
+                        // Guard Code
+                        if (token.isCancelled()) {
+                            return;
+                        }
+
+                        dialogState.setValue(DialogState.ready(item, item.url, colors, labels, null));
+                    }
+
+                    @Override
+                    public void onMissing() {
+                        // Guard Code
+                        if (token.isCancelled()) {
+                            return;
+                        }
+
+                        analyseImage(item, token);
+                    }
+                });
+    }
+
+    /**
+     * To fetch a random image for the open dialog
+     * An image kept ready in the pool is shown at once
+     * @param width width of the image
+     * @param height height of the image
+     */
+    public void fetchRandomImage(int width, int height) {
+        CancellationToken token = dialogToken;
+
+        // Guard Code
+        if (token == null) {
+            return;
+        }
+
+        pooledImage = app.getImagePool().take(width, height);
+        if (pooledImage != null) {
+            dialogState.setValue(DialogState.ready(null, pooledImage.url,
+                    pooledImage.colors, pooledImage.labels, pooledImage.bitmap));
+            app.getImagePool().refill();
+            return;
+        }
+
+        dialogState.setValue(DialogState.loading(null));
+        ItemHelper.OnCompleteListener listener = new ItemHelper.OnCompleteListener() {
+            @Override
+            public void onSuccess(String url, Set<Integer> colors, List<String> labels, SharedBitmap preview) {
+                // The image analysed is shown, it is not decoded again
+                dialogBitmap = preview;
+                dialogState.setValue(DialogState.ready(null, url, colors, labels, preview.bitmap));
+
+                // Getting the next images of these dimensions ready
+                app.getImagePool().refill();
+            }
+
+            @Override
+            public void onError(String error) {
+                dialogState.setValue(DialogState.failed(error));
+            }
+        };
+
+        // To fetch square image
+        if (width == height) {
+            new ItemHelper().fetchData(app, width, token, listener);
+        }
+        // To fetch Rectangular image
+        else {
+            new ItemHelper().fetchData(app, width, height, token, listener);
+        }
+    }
+
+    /**
+     * To close the dialog, its work still running is cancelled
+     */
+    public void closeDialog() {
+        if (dialogToken != null) {
+            dialogToken.cancel();
+            dialogToken = null;
+        }
+
+        if (pooledImage != null) {
+            pooledImage.release();
+            pooledImage = null;
+        }
+
+        if (dialogBitmap != null) {
+            dialogBitmap.release();
+            dialogBitmap = null;
+        }
+
+        dialogState.setValue(null);
+    }
+
+    /**
+     * To start the work of a new dialog, the one open before is closed
+     */
+    private void openDialog() {
+        closeDialog();
+        dialogToken = new CancellationToken();
+    }
+
+    /**
+     * To load the image of the item and get its colors and labels
+     * The image is decoded once, the analysis and the preview share it
+     * @param item item whose image is to be analysed
+     * @param token cancellation of the dialog
+     */
+    private void analyseImage(Item item, CancellationToken token) {
+        SharedBitmap.load(app, MachineLearningModelHelper.loadForAnalysis(app, item.url), token,
+                new SharedBitmap.OnLoadListener() {
+                    @Override
+                    public void onLoaded(SharedBitmap image) {
+                        app.getAnalysisCache()
+                                .getData(item.url, image.bitmap, token, new MachineLearningModelHelper.OnCompleteListener() {
+                                    @Override
+                                    public void onSuccess(Set<Integer> colors, List<String> labels) {
+                                        // Comes before the release, the image is still held
+                                        dialogBitmap = image.retain();
+                                        dialogState.setValue(DialogState.ready(item, item.url, colors, labels, image.bitmap));
+                                    }
+
+                                    @Override
+                                    public void onError(String error) {
+                                        dialogState.setValue(DialogState.failed(error));
+                                    }
+
+                                    @Override
+                                    public void onBitmapReleased() {
+                                        image.release();
+                                    }
+                                });
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        dialogState.setValue(DialogState.failed(error));
+                    }
+                });
+    }
+
+    // Batch methods
+
+    /**
+     * To get the progress of the running batch
+     * @return progress, null when no batch runs
+     */
+    public LiveData<BatchIngestHelper.Progress> getBatchProgress() {
+        return batchProgress;
+    }
+
+    /**
+     * To get the final progress of the batch just over
+     * @return progress, null once it is shown
+     */
+    public LiveData<BatchIngestHelper.Progress> getBatchResult() {
+        return batchResult;
+    }
+
+    /**
+     * To check whether there are items of the batch to be added to the list
+     * @return true until they are taken
+     */
+    public LiveData<Boolean> hasReadyItems() {
+        return hasReadyItems;
+    }
+
+    /**
+     * To add the random images through the batch pipeline
+     * @param count number of the images
+     * @param sizes dimensions of the images as {width, height}, used in turn
+     */
+    public void startBatch(int count, List<int[]> sizes) {
+        if (batchIngestHelper == null) {
+            batchIngestHelper = new BatchIngestHelper(app);
+        }
+
+        batchIngestHelper.start(count, sizes, new BatchIngestHelper.OnProgressListener() {
+            @Override
+            public void onItemsReady(List<Item> items) {
+                // Kept until the activity takes them, it may be being recreated
+                readyItems.addAll(items);
+                hasReadyItems.setValue(true);
+            }
+
+            @Override
+            public void onProgress(BatchIngestHelper.Progress progress) {
+                batchProgress.setValue(progress);
+            }
+
+            @Override
+            public void onComplete(BatchIngestHelper.Progress progress, boolean isCancelled) {
+                batchProgress.setValue(null);
+                batchResult.setValue(progress);
+            }
+        });
+    }
+
+    /**
+     * To stop the running batch, the items already analysed are still added
+     */
+    public void cancelBatch() {
+        if (batchIngestHelper != null) {
+            batchIngestHelper.cancel();
+        }
+    }
+
+    /**
+     * To take the items of the batch to be added to the list
+     * @return items in order, empty if there is none
+     */
+    public List<Item> takeReadyItems() {
+        List<Item> items = new ArrayList<>(readyItems);
+        readyItems.clear();
+        hasReadyItems.setValue(false);
+        return items;
+    }
+
+    /**
+     * To forget the result of the batch once it is shown
+     */
+    public void clearBatchResult() {
+        batchResult.setValue(null);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+
+        // The activity is gone for good, not being recreated
+        closeDialog();
+        cancelBatch();
+    }
+
+    /**
+     * Represents the state of the image dialog
+     */
+    public static class DialogState {
+        // Steps of the dialog
+        public static final int STATUS_INPUT = 0;
+        public static final int STATUS_LOADING = 1;
+        public static final int STATUS_READY = 2;
+        public static final int STATUS_FAILED = 3;
+
+        // Step of the dialog
+        public final int status;
+        // Item shown, null for a random image
+        public final Item item;
+        // Url of the image
+        public final String url;
+        // Major colors in the image
+        public final Set<Integer> colors;
+        // Labels of the image
+        public final List<String> labels;
+        // Image already loaded, valid while the dialog is open, null to load it from the url
+        public final Bitmap preview;
+        // Error occurred
+        public final String error;
+
+        private DialogState(int status, Item item, String url, Set<Integer> colors,
+                            List<String> labels, Bitmap preview, String error) {
+            this.status = status;
+            this.item = item;
+            this.url = url;
+            this.colors = colors;
+            this.labels = labels;
+            this.preview = preview;
+            this.error = error;
+        }
+
+        static DialogState input() {
+            return new DialogState(STATUS_INPUT, null, null, null, null, null, null);
+        }
+
+        static DialogState loading(Item item) {
+            return new DialogState(STATUS_LOADING, item, null, null, null, null, null);
+        }
+
+        static DialogState ready(Item item, String url, Set<Integer> colors, List<String> labels, Bitmap preview) {
+            return new DialogState(STATUS_READY, item, url, colors, labels, preview, null);
+        }
+
+        static DialogState failed(String error) {
+            return new DialogState(STATUS_FAILED, null, null, null, null, null, error);
+        }
+    }
+}
@@ -2,17 +2,194 @@ package com.streamliners.galleryapp;
 
 import android.app.Application;
 import android.content.Context;
+import android.util.Log;
 
 import androidx.appcompat.app.AlertDialog;
 
+import com.bumptech.glide.Glide;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.streamliners.galleryapp.helpers.AnalysisCacheHelper;
+import com.streamliners.galleryapp.helpers.CacheCoordinator;
+import com.streamliners.galleryapp.helpers.ImageMirrorStore;
+import com.streamliners.galleryapp.helpers.ImagePoolHelper;
+import com.streamliners.galleryapp.helpers.LabelingEngine;
+import com.streamliners.galleryapp.helpers.RedirectedUrlHelper;
+import com.streamliners.galleryapp.helpers.ShareCardHelper;
+import com.streamliners.galleryapp.helpers.ThumbnailStore;
+import com.streamliners.galleryapp.helpers.databaseHelper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Represents application class
  */
 public class MyApp extends Application {
+    // Tag for the memory reports in the log
+    private static final String TAG = "MyApp";
+
     // For loading dialog
     private AlertDialog alertDialog;
+    // For the database work, single thread keeps the reads and writes in order
+    private final ExecutorService databaseExecutor = Executors.newSingleThreadExecutor();
+    // Database shared by the whole app
+    private databaseHelper dbHelper;
+    // Stored colors and labels of the images
+    private AnalysisCacheHelper analysisCache;
+    // Labeler shared by the whole app
+    private final LabelingEngine labelingEngine = new LabelingEngine();
+    // Client resolving the redirects of the images, keeps its connections and results
+    private final RedirectedUrlHelper redirectedUrlHelper = new RedirectedUrlHelper();
+    // Random images kept ready for the add dialog
+    private ImagePoolHelper imagePool;
+    // Thumbnails of the images kept on the device for the list
+    private ThumbnailStore thumbnailStore;
+    // Originals of the network images kept on the device
+    private ImageMirrorStore imageMirror;
+    // Cards of the items made for sharing
+    private ShareCardHelper shareCardHelper;
+    // Memory policy shared by the caches of the app
+    private final CacheCoordinator cacheCoordinator = new CacheCoordinator();
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Loading the model once, before the first image needs it
+        labelingEngine.warmUp();
+
+        // The model is loaded again on the next image, only under memory pressure
+        cacheCoordinator.register(CacheCoordinator.PRIORITY_MODELS, labelingEngine);
+        cacheCoordinator.register(CacheCoordinator.PRIORITY_LOOKUPS, redirectedUrlHelper);
+
+        // Glide registers with the coordinator while it is built, and is trimmed only by it,
+        // otherwise its own callbacks would trim it a second time and out of the order
+        unregisterComponentCallbacks(Glide.get(this));
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Before the callbacks of the components, so the memory reclaimed is counted here
+        trimCaches(level);
+        super.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        trimCaches(TRIM_MEMORY_COMPLETE);
+        super.onLowMemory();
+    }
+
+    /**
+     * To trim the caches of the app as much as the level asks
+     * @param level trim level given by the system
+     */
+    private void trimCaches(int level) {
+        long size = cacheCoordinator.getSizeBytes();
+        long reclaimed = cacheCoordinator.trim(level);
+        Log.d(TAG, "Trim level " + level + ": reclaimed " + reclaimed + " of " + size + " bytes");
+    }
+
+    /**
+     * To get the memory policy shared by the caches of the app
+     * @return coordinator the caches register with
+     */
+    public CacheCoordinator getCacheCoordinator() {
+        return cacheCoordinator;
+    }
+
+    /**
+     * To get the executor for the database work
+     * @return executor running one task at a time
+     */
+    public ExecutorService getDatabaseExecutor() {
+        return databaseExecutor;
+    }
+
+    /**
+     * To get the database shared by the whole app
+     * @return helper of the database
+     */
+    public synchronized databaseHelper getDatabaseHelper() {
+        if (dbHelper == null) {
+            dbHelper = new databaseHelper(this);
+        }
+        return dbHelper;
+    }
+
+    /**
+     * To get the stored colors and labels of the images
+     * @return cache of the analyses
+     */
+    public synchronized AnalysisCacheHelper getAnalysisCache() {
+        if (analysisCache == null) {
+            analysisCache = new AnalysisCacheHelper(getDatabaseHelper(), databaseExecutor, labelingEngine);
+        }
+        return analysisCache;
+    }
+
+    /**
+     * To get the labeler shared by the whole app
+     * @return engine labeling one image at a time
+     */
+    public LabelingEngine getLabelingEngine() {
+        return labelingEngine;
+    }
+
+    /**
+     * To get the random images kept ready for the add dialog
+     * @return pool of the images
+     */
+    public synchronized ImagePoolHelper getImagePool() {
+        if (imagePool == null) {
+            imagePool = new ImagePoolHelper(this);
+            cacheCoordinator.register(CacheCoordinator.PRIORITY_PREFETCHED, imagePool);
+        }
+        return imagePool;
+    }
+
+    /**
+     * To get the thumbnails of the images kept on the device
+     * @return store of the thumbnails
+     */
+    public synchronized ThumbnailStore getThumbnailStore() {
+        if (thumbnailStore == null) {
+            thumbnailStore = new ThumbnailStore(this, getDatabaseHelper());
+            cacheCoordinator.register(CacheCoordinator.PRIORITY_LOOKUPS, thumbnailStore);
+        }
+        return thumbnailStore;
+    }
+
+    /**
+     * To get the originals of the network images kept on the device
+     * @return store of the originals
+     */
+    public synchronized ImageMirrorStore getImageMirror() {
+        if (imageMirror == null) {
+            imageMirror = new ImageMirrorStore(this, getDatabaseHelper(), databaseExecutor,
+                    ImageMirrorStore.DEFAULT_BUDGET_BYTES);
+        }
+        return imageMirror;
+    }
+
+    /**
+     * To get the cards of the items made for sharing
+     * @return helper keeping the cards shared
+     */
+    public synchronized ShareCardHelper getShareCardHelper() {
+        if (shareCardHelper == null) {
+            shareCardHelper = new ShareCardHelper(this);
+        }
+        return shareCardHelper;
+    }
+
+    /**
+     * To get the client resolving the redirects of the images
+     * @return helper shared by the whole app
+     */
+    public RedirectedUrlHelper getRedirectedUrlHelper() {
+        return redirectedUrlHelper;
+    }
 
     /**
      * To show the loading dialog
@@ -25,10 +202,28 @@ public class MyApp extends Application {
                 .show();
     }
 
+    /**
+     * To show the loading dialog which the user may cancel
+     * @param context context of the activity
+     * @param onCancel to be run when the user cancels the loading
+     */
+    public void showLoadingDialog(Context context, Runnable onCancel) {
+        alertDialog = new MaterialAlertDialogBuilder(context)
+                .setView(R.layout.dialog_loading)
+                .setCancelable(false)
+                .setNegativeButton("Cancel", (dialog, which) -> onCancel.run())
+                .show();
+    }
+
     /**
      * To dismiss the loading dialog
      */
     public void hideLoadingDialog() {
+        // Guard Code
+        if (alertDialog == null) {
+            return;
+        }
+
         alertDialog.dismiss();
     }
 }
@@ -9,31 +9,36 @@ import android.view.ViewGroup;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.streamliners.galleryapp.GalleryActivity;
+import com.streamliners.galleryapp.MyApp;
 import com.streamliners.galleryapp.R;
 import com.streamliners.galleryapp.databinding.ItemCardBinding;
+import com.streamliners.galleryapp.helpers.ItemChangeTracker;
+import com.streamliners.galleryapp.helpers.ItemPagingSource;
+import com.streamliners.galleryapp.helpers.ThumbnailHelper;
+import com.streamliners.galleryapp.helpers.ThumbnailPreloader;
+import com.streamliners.galleryapp.helpers.ThumbnailStore;
 import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.models.ItemQuery;
+import com.streamliners.galleryapp.models.Thumbnail;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
  * Represents adapter for items data list
  */
-public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder> {
+public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder>
+        implements ThumbnailPreloader.ModelProvider {
     /**
-     * List of the items
+     * Source of the visible items
      */
-    private final List<Item> mItemList;
+    private final ItemPagingSource mItems;
 
-    /**
-     * List of the visible items
-     */
-    public final List<Item> visibleItemsList;
     /**
      * Context of the activity for inflating purpose
      */
@@ -45,31 +50,64 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
     private final OnListSizeChangeListener mListener;
 
     /**
-     * For the index of the item selected in the list
+     * Tracker for the changes to be saved
      */
-    public int index = -1;
+    private final ItemChangeTracker mTracker;
 
     /**
-     * For the binding of the item selected from the list
+     * For the index of the item selected in the list
      */
-    public ItemCardBinding itemBinding;
+    public int index = -1;
 
     /**
      * To check whether the Drag and Drop enabled or not
      */
     public boolean isDragAndDropEnabled;
 
+    /**
+     * Width of the images in the cards, measured when the first card is made
+     */
+    private int mThumbnailWidth;
+
+    /**
+     * Store of the thumbnails made on the device
+     */
+    private final ThumbnailStore mThumbnailStore;
+
     /**
      * To initialize the object with...
      * @param context context of the activity
-     * @param items list of the items
+     * @param items source of the items
+     * @param tracker tracker for the changes in the list
      * @param listener listener for the callbacks
      */
-    public ItemAdapter(Context context, List<Item> items, OnListSizeChangeListener listener) {
+    public ItemAdapter(Context context, ItemPagingSource items, ItemChangeTracker tracker, OnListSizeChangeListener listener) {
         this.mContext = context;
-        this.mItemList = items;
+        this.mItems = items;
+        this.mTracker = tracker;
         this.mListener = listener;
-        this.visibleItemsList = new ArrayList<>(items);
+        this.mThumbnailStore = ((MyApp) context.getApplicationContext()).getThumbnailStore();
+
+        // Rows are identified by the items, so the unchanged rows are not bound again
+        setHasStableIds(true);
+
+        // Refreshing the rows whenever the items are loaded
+        mItems.setOnChangeListener(new ItemPagingSource.OnChangeListener() {
+            @Override
+            public void onItemRangeLoaded(int start, int count) {
+                notifyItemRangeChanged(start, count);
+            }
+
+            @Override
+            public void onReloaded() {
+                notifyDataSetChanged();
+            }
+
+            @Override
+            public void onItemsChanged(DiffUtil.DiffResult diff) {
+                diff.dispatchUpdatesTo(ItemAdapter.this);
+            }
+        });
     }
 
     @NonNull
@@ -78,60 +116,154 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
         // Making the binding for the item
         ItemCardBinding binding = ItemCardBinding.inflate(LayoutInflater.from(mContext), parent, false);
 
+        // Measuring the width of the images once the list is laid out
+        if (mThumbnailWidth == 0) {
+            mThumbnailWidth = measureThumbnailWidth(parent, binding);
+        }
+
         return new ItemViewHolder(binding);
     }
 
     @Override
     public void onBindViewHolder(@NonNull ItemViewHolder holder, int position) {
         // Item for the specific position
-        Item item = visibleItemsList.get(position);
+        Item item = mItems.get(position);
+
+        // Showing the placeholder till the item is loaded
+        if (item == null) {
+            Glide.with(mContext).clear(holder.cardBinding.imageView);
+            holder.cardBinding.imageView.getLayoutParams().height = ViewGroup.LayoutParams.WRAP_CONTENT;
+            holder.cardBinding.labelView.setText(null);
+            holder.cardBinding.labelView.setBackgroundColor(
+                    ContextCompat.getColor(mContext, R.color.label_placeholder));
+            return;
+        }
+
+        Thumbnail thumbnail = withThumbnail(item).thumbnail;
+
+        // Height of the image known from its aspect ratio, so the card does not resize when it loads
+        ViewGroup.LayoutParams params = holder.cardBinding.imageView.getLayoutParams();
+        params.height = thumbnail != null
+                ? Math.round(mThumbnailWidth / thumbnail.aspectRatio)
+                : ViewGroup.LayoutParams.WRAP_CONTENT;
+        holder.cardBinding.imageView.setLayoutParams(params);
 
-        // Binding the data to the views
-        Glide.with(mContext).asBitmap().load(item.url).into(holder.cardBinding.imageView);
+        // Binding the data to the views, the blurred placeholder shows till the image is loaded
+        ThumbnailHelper.loadThumbnail(mContext, item, mThumbnailWidth)
+                .placeholder(ThumbnailHelper.getPlaceholder(mContext.getResources(), thumbnail))
+                .into(holder.cardBinding.imageView);
         holder.cardBinding.labelView.setText(item.label);
         holder.cardBinding.labelView.setBackgroundColor(item.color);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ItemViewHolder holder) {
+        // Stopping the load of the card scrolled away and giving its bitmap back to the pool
+        Glide.with(mContext).clear(holder.cardBinding.imageView);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        // Called during the layout, so it does not load any page
+        Item item = mItems.peek(position);
+
+        // Placeholder rows get negative ids, never used by the items
+        return item != null ? item.id : -2 - position;
+    }
+
     @Override
     public int getItemCount() {
-        mListener.onListSizeChanges(visibleItemsList.size());
-        return visibleItemsList.size();
+        mListener.onListSizeChanges(mItems.size());
+        return mItems.size();
+    }
+
+    /**
+     * To get the visible item at the position
+     * @param position position of the item
+     * @return the item, null if it is not loaded yet
+     */
+    public Item getItem(int position) {
+        return mItems.get(position);
+    }
+
+    @Override
+    public Item getPreloadItem(int position) {
+        // Items not in the memory are not preloaded, the pages load as the list scrolls
+        Item item = mItems.peek(position);
+        return item != null ? withThumbnail(item) : null;
+    }
+
+    @Override
+    public int getThumbnailWidth() {
+        return mThumbnailWidth;
     }
 
     /**
      * To filter the visible list
+     * Matching items are loaded in the background and the list is refreshed then
      * @param query query for the search
      */
     public void filter(String query) {
-        // Clear the list
-        visibleItemsList.clear();
+        ItemQuery currentQuery = mItems.getQuery();
+        String searchText = query.trim();
 
-        // Check for query given
-        if (query.trim().isEmpty()) {
-            // Add all the items of the main list into visible list
-            visibleItemsList.addAll(mItemList);
-        } else {
-            // Filter according to the query
-            for (Item item :
-                    mItemList) {
-                if (item.label.toLowerCase().contains(query.toLowerCase())) {
-                    visibleItemsList.add(item);
-                }
-            }
+        // Guard Code
+        if (!currentQuery.isSortedByLabel && currentQuery.searchText.equals(searchText)) {
+            return;
         }
 
-        // Refreshing the list
-        notifyDataSetChanged();
+        mItems.setQuery(new ItemQuery(searchText, false));
     }
 
     /**
      * To sort alphabetically the visible list
      */
     public void sortAlphabetically() {
-        // Sort the list
-        Collections.sort(visibleItemsList, (o1, o2) -> o1.label.compareTo(o2.label));
+        mItems.setQuery(new ItemQuery(mItems.getQuery().searchText, true));
+    }
+
+    /**
+     * To show all the items in their own order, the search and the sort are cleared
+     */
+    public void clearQuery() {
+        // Guard Code
+        if (mItems.getQuery().isAllItems()) {
+            return;
+        }
 
-        notifyDataSetChanged();
+        mItems.setQuery(ItemQuery.ALL);
+    }
+
+    /**
+     * To give the item its thumbnail if it was made after the item was loaded
+     * The thumbnail is made now if the item has none
+     * @param item item shown
+     * @return the item
+     */
+    private Item withThumbnail(Item item) {
+        if (item.thumbnail == null) {
+            item.thumbnail = mThumbnailStore.get(item.url);
+        }
+        return item;
+    }
+
+    /**
+     * To measure the width of the image in the card
+     * @param parent list the card is shown in
+     * @param binding binding of the card
+     * @return width of the image, the screen width if the list is not laid out yet
+     */
+    private int measureThumbnailWidth(ViewGroup parent, ItemCardBinding binding) {
+        int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+
+        // Guard Code
+        if (width <= 0) {
+            return mContext.getResources().getDisplayMetrics().widthPixels;
+        }
+
+        // Card is inset by its margins
+        ViewGroup.MarginLayoutParams params = (ViewGroup.MarginLayoutParams) binding.cardView.getLayoutParams();
+        return width - params.leftMargin - params.rightMargin;
     }
 
     // Notify methods
@@ -141,21 +273,61 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
      * @param item item to be added
      */
     public void add(Item item){
-        mItemList.add(item);
-        visibleItemsList.add(item);
-        notifyItemInserted(visibleItemsList.size()-1);
+        mTracker.recordAdd(item);
+
+        // Searched or sorted list is loaded again to place the item correctly
+        if (mItems.getQuery().isAllItems()) {
+            mItems.append(item);
+            notifyItemInserted(mItems.size()-1);
+        } else {
+            mItems.reload();
+        }
 
         // Showing the toast
         Toast.makeText(mContext, "Item Added!", Toast.LENGTH_SHORT).show();
     }
 
+    /**
+     * To notify the adapter for the items added together
+     * The list changes once for all of them and no toast is shown for each one
+     * @param items items to be added, in order
+     */
+    public void addAll(List<Item> items){
+        // Guard Code
+        if (items.isEmpty()) {
+            return;
+        }
+
+        for (Item item : items) {
+            mTracker.recordAdd(item);
+        }
+
+        // Searched or sorted list is loaded again to place the items correctly
+        if (mItems.getQuery().isAllItems()) {
+            int start = mItems.size();
+            for (Item item : items) {
+                mItems.append(item);
+            }
+            notifyItemRangeInserted(start, items.size());
+        } else {
+            mItems.reload();
+        }
+    }
+
     /**
      * To notify the adapter for the item deletion
      * @param position index of the item to be deleted
      */
     public void delete(int position){
-        mItemList.remove(visibleItemsList.get(position));
-        visibleItemsList.remove(position);
+        Item item = mItems.get(position);
+
+        // Guard Code
+        if (item == null) {
+            return;
+        }
+
+        mTracker.recordDelete(item);
+        mItems.remove(position);
         notifyItemRemoved(position);
 
         // Showing the toast
@@ -164,13 +336,24 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
 
     /**
      * To notify the adapter for the item edition
-     * @param position index of the item to be edit
+     * The item is found by its id, so the list may change while it is being edited
+     * @param oldItem item to be edit
      * @param item edited(changed) item
      */
-    public void edit(int position, Item item){
-        mItemList.set(mItemList.indexOf(visibleItemsList.get(position)), item);
-        visibleItemsList.set(position, item);
-        notifyItemChanged(position);
+    public void edit(Item oldItem, Item item){
+        mTracker.recordEdit(oldItem, item);
+
+        // Same image, same thumbnail
+        if (item.thumbnail == null && item.url.equals(oldItem.url)) {
+            item.thumbnail = oldItem.thumbnail;
+        }
+
+        // Item not in the memory is loaded with the changes when needed
+        int position = mItems.indexOf(oldItem.id);
+        if (position != -1) {
+            mItems.set(position, item);
+            notifyItemChanged(position);
+        }
 
         // Showing the toast
         Toast.makeText(mContext, "Item Edited!", Toast.LENGTH_SHORT).show();
@@ -180,11 +363,23 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
      * To notify the adapter that the item moved
      * @param from initial index
      * @param to index where the item to be moved
+     * @return true if the item is moved
      */
-    public void move(int from, int to){
-        Collections.swap(mItemList, mItemList.indexOf(visibleItemsList.get(from)), mItemList.indexOf(visibleItemsList.get(to)));
-        Collections.swap(visibleItemsList, from, to);
+    public boolean move(int from, int to){
+        Item fromItem = mItems.get(from);
+        Item toItem = mItems.get(to);
+
+        // Guard Code
+        // Positions are the order of all the items, not of a sorted or searched list
+        if (fromItem == null || toItem == null || !mItems.getQuery().isAllItems()) {
+            return false;
+        }
+
+        mTracker.recordSwap(fromItem, toItem);
+        mItems.set(from, toItem);
+        mItems.set(to, fromItem);
         notifyItemMoved(from, to);
+        return true;
     }
 
     /**
@@ -215,9 +410,8 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemViewHolder
                 return;
             }
 
-            // Setting the index and binding of the item in the list
+            // Setting the index of the item in the list
             index = this.getAbsoluteAdapterPosition();
-            itemBinding = cardBinding;
 
             // Inflate the menu
             MenuInflater inflater = ((GalleryActivity) mContext).getMenuInflater();
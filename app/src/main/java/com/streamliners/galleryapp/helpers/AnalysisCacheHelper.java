@@ -0,0 +1,222 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.streamliners.galleryapp.models.ImageAnalysis;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Helper class to keep the colors and labels of the images in the database
+ * so that the machine learning model runs only once for every image
+ */
+public class AnalysisCacheHelper {
+    // Maximum number of the analyses kept, least recently used ones are evicted
+    private static final int MAX_ANALYSES = 500;
+    // Number of the pixels sampled along each side of the image for its hash
+    private static final int HASH_SAMPLES = 32;
+
+    // Database having the analyses
+    private final databaseHelper mDbHelper;
+    // Executor for the database work
+    private final ExecutorService mExecutor;
+    // Labeler shared by the whole app
+    private final LabelingEngine mLabelingEngine;
+    // To give the callbacks on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * To initialize the cache with...
+     * @param dbHelper database having the analyses
+     * @param executor executor for the database work
+     * @param labelingEngine labeler shared by the whole app
+     */
+    public AnalysisCacheHelper(databaseHelper dbHelper, ExecutorService executor, LabelingEngine labelingEngine) {
+        this.mDbHelper = dbHelper;
+        this.mExecutor = executor;
+        this.mLabelingEngine = labelingEngine;
+    }
+
+    /**
+     * To get the analysis stored for the image without loading it
+     * Used for the images already added, whose content does not change
+     * @param url url of the image
+     * @param listener listener called on the main thread
+     */
+    public void getData(String url, OnFetchListener listener) {
+        mExecutor.execute(() -> {
+            ImageAnalysis analysis = null;
+            try {
+                analysis = mDbHelper.fetchAnalysis(url, System.currentTimeMillis());
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+
+            ImageAnalysis result = analysis;
+            mMainHandler.post(() -> {
+                if (result == null) {
+                    listener.onMissing();
+                } else {
+                    listener.onFound(result.colors, result.labels);
+                }
+            });
+        });
+    }
+
+    /**
+     * To get the analysis of the loaded image, running the model only if
+     * no image with the same content was analysed before
+     * @param url url of the image
+     * @param bitmap image loaded from the url
+     * @param listener listener called on the main thread
+     */
+    public void getData(String url, Bitmap bitmap, MachineLearningModelHelper.OnCompleteListener listener) {
+        getData(url, bitmap, new CancellationToken(), listener);
+    }
+
+    /**
+     * To get the analysis of the loaded image unless the request is cancelled
+     * Once it is cancelled no result is given, only the release of the image
+     * @param url url of the image
+     * @param bitmap image loaded from the url
+     * @param token cancellation of the request, to be cancelled on the main thread
+     * @param listener listener called on the main thread
+     */
+    public void getData(String url, Bitmap bitmap, CancellationToken token, MachineLearningModelHelper.OnCompleteListener listener) {
+        // Hashing on the calling thread, the bitmap is never read by the database thread
+        String hash = computeHash(bitmap);
+
+        mExecutor.execute(() -> {
+            ImageAnalysis analysis = null;
+            try {
+                // Requests cancelled while waiting for the database are not looked up
+                if (!token.isCancelled()) {
+                    analysis = mDbHelper.fetchAnalysisByHash(hash, System.currentTimeMillis());
+                }
+                // Same content under another url, stored for this url too
+                if (analysis != null && !analysis.url.equals(url)) {
+                    analysis = new ImageAnalysis(url, hash, analysis.colors, analysis.labels);
+                    mDbHelper.saveAnalysis(analysis, System.currentTimeMillis(), MAX_ANALYSES);
+                }
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+
+            ImageAnalysis result = analysis;
+            mMainHandler.post(() -> {
+                if (token.isCancelled()) {
+                    listener.onBitmapReleased();
+                } else if (result != null) {
+                    listener.onSuccess(result.colors, result.labels);
+                    listener.onBitmapReleased();
+                } else {
+                    analyse(url, hash, bitmap, token, listener);
+                }
+            });
+        });
+    }
+
+    /**
+     * To remove the analysis of the image, it is found again next time
+     * @param url url of the image
+     */
+    public void invalidate(String url) {
+        mExecutor.execute(() -> {
+            try {
+                mDbHelper.deleteAnalysis(url);
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+        });
+    }
+
+    /**
+     * To run the model on the image and store its result
+     * @param url url of the image
+     * @param hash hash of the image content
+     * @param bitmap image loaded from the url
+     * @param token cancellation of the request
+     * @param listener listener to be called when work is done
+     */
+    private void analyse(String url, String hash, Bitmap bitmap, CancellationToken token,
+                         MachineLearningModelHelper.OnCompleteListener listener) {
+        MachineLearningModelHelper modelHelper = new MachineLearningModelHelper(mLabelingEngine);
+        modelHelper.getData(bitmap, token, new MachineLearningModelHelper.OnCompleteListener() {
+            @Override
+            public void onSuccess(Set<Integer> colors, List<String> labels) {
+                // Partial results are shown but not kept, the image is analysed again next time
+                if (!modelHelper.isComplete()) {
+                    listener.onSuccess(colors, labels);
+                    return;
+                }
+
+                ImageAnalysis analysis = new ImageAnalysis(url, hash, colors, labels);
+                mExecutor.execute(() -> {
+                    try {
+                        mDbHelper.saveAnalysis(analysis, System.currentTimeMillis(), MAX_ANALYSES);
+                    } catch (Exception e) {
+                        System.err.println(e.toString());
+                    }
+                });
+
+                listener.onSuccess(colors, labels);
+            }
+
+            @Override
+            public void onError(String error) {
+                listener.onError(error);
+            }
+
+            @Override
+            public void onBitmapReleased() {
+                listener.onBitmapReleased();
+            }
+        });
+    }
+
+    /**
+     * To compute the hash of the image content from a grid of its pixels
+     * Cheap enough for the main thread whatever the size of the image
+     * @param bitmap image to be hashed
+     * @return hash of the image content in hex format
+     */
+    public static String computeHash(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+
+        // FNV-1a over the dimensions and the sampled pixels
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ width) * 0x100000001b3L;
+        hash = (hash ^ height) * 0x100000001b3L;
+        for (int i = 0; i < HASH_SAMPLES; i++) {
+            int y = (int) ((2L * i + 1) * height / (2 * HASH_SAMPLES));
+            for (int j = 0; j < HASH_SAMPLES; j++) {
+                int x = (int) ((2L * j + 1) * width / (2 * HASH_SAMPLES));
+                hash = (hash ^ bitmap.getPixel(x, y)) * 0x100000001b3L;
+            }
+        }
+        return String.format(Locale.ROOT, "%016x", hash);
+    }
+
+    /**
+     * Interface for the callbacks of the stored analysis
+     */
+    public interface OnFetchListener {
+        /**
+         * when the analysis of the image is stored
+         * @param colors major colors in the image
+         * @param labels labels of the image
+         */
+        void onFound(Set<Integer> colors, List<String> labels);
+
+        /**
+         * when the image has not been analysed yet
+         */
+        void onMissing();
+    }
+}
@@ -0,0 +1,627 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+import com.streamliners.galleryapp.MyApp;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Helper class to add many random images at once
+ * Every image goes through the resolve, download, decode, analyze and persist stages,
+ * each stage works on a few images at a time and waits while the next one is full
+ * All the methods are to be called on the main thread, the callbacks come on it too
+ */
+public class BatchIngestHelper {
+    // Stages of the pipeline, in order
+    public static final int STAGE_RESOLVE = 0;
+    public static final int STAGE_DOWNLOAD = 1;
+    public static final int STAGE_DECODE = 2;
+    public static final int STAGE_ANALYZE = 3;
+    public static final int STAGE_PERSIST = 4;
+    // Names of the stages for the progress
+    public static final String[] STAGE_NAMES = {"Resolve", "Download", "Decode", "Analyze", "Persist"};
+
+    // Default number of the images each stage works on at the same time
+    // Analysis is bounded by the single labeler, more decoded images would only wait in the memory
+    private static final int[] DEFAULT_CONCURRENCY = {4, 4, 2, 2, 1};
+    // Default number of the images waiting between two stages
+    private static final int DEFAULT_QUEUE_CAPACITY = 8;
+    // Default number of the items added to the list together
+    private static final int DEFAULT_BATCH_SIZE = 25;
+    // Label given when the labeler finds nothing
+    private static final String DEFAULT_LABEL = "Image";
+
+    // Context of the application, the batch outlives the dialogs
+    private final Context mContext;
+    // Resolves the redirects of the random images
+    private final RedirectedUrlHelper mRedirectedUrlHelper;
+    // Analyses the images, reusing the earlier results
+    private final AnalysisCacheHelper mAnalysisCache;
+    // Makes the thumbnails of the items for the list
+    private final ThumbnailStore mThumbnailStore;
+    // Keeps the downloaded originals, the decode stage reads them from there
+    private final ImageMirrorStore mImageMirror;
+    // To come back to the main thread from the resolve and download workers
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Number of the images each stage works on at the same time
+    private final int[] mConcurrency;
+    // Number of the images waiting between two stages
+    private final int mQueueCapacity;
+    // Number of the items added to the list together
+    private final int mBatchSize;
+
+    // Images waiting for each stage, the resolve stage takes new ones instead
+    private final List<ArrayDeque<Job>> mQueues = new ArrayList<>();
+    // Number of the images each stage is working on
+    private final int[] mRunning = new int[STAGE_NAMES.length];
+    // Number of the images each stage is done with
+    private final int[] mCompleted = new int[STAGE_NAMES.length];
+
+    // Workers resolving the redirects, null when no batch runs
+    private ExecutorService mResolveExecutor;
+    // Workers downloading the images, null when no batch runs
+    private ExecutorService mDownloadExecutor;
+    // Cancellation of the batch, honored by every stage
+    private CancellationToken mToken;
+    // Dimensions of the images as {width, height}, used in turn
+    private List<int[]> mSizes;
+    // Listener for the batch
+    private OnProgressListener mListener;
+    // Number of the images requested
+    private int mTotal;
+    // Number of the images started
+    private int mStarted;
+    // Number of the images which could not be added
+    private int mFailed;
+    // Time at which the batch started
+    private long mStartTime;
+    // To check whether the batch runs
+    private boolean isRunning;
+
+    /**
+     * To construct the helper with the default limits
+     * @param context context of the application
+     */
+    public BatchIngestHelper(Context context) {
+        this(context, DEFAULT_CONCURRENCY, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * To construct the helper with...
+     * @param context context of the application
+     * @param concurrency number of the images each stage works on at the same time, one per stage
+     * @param queueCapacity number of the images waiting between two stages
+     * @param batchSize number of the items added to the list together
+     */
+    public BatchIngestHelper(Context context, int[] concurrency, int queueCapacity, int batchSize) {
+        this.mContext = context.getApplicationContext();
+        MyApp app = (MyApp) mContext;
+        this.mRedirectedUrlHelper = app.getRedirectedUrlHelper();
+        this.mAnalysisCache = app.getAnalysisCache();
+        this.mThumbnailStore = app.getThumbnailStore();
+        this.mImageMirror = app.getImageMirror();
+        this.mConcurrency = concurrency.clone();
+        this.mQueueCapacity = queueCapacity;
+        this.mBatchSize = batchSize;
+
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            mQueues.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * To start adding the random images
+     * @param count number of the images to be added
+     * @param sizes dimensions of the images as {width, height}, used in turn
+     * @param listener listener to be called as the batch goes on
+     */
+    public void start(int count, List<int[]> sizes, OnProgressListener listener) {
+        // Guard Code
+        if (isRunning) {
+            throw new IllegalStateException("A batch is already running");
+        }
+
+        this.mTotal = count;
+        this.mSizes = new ArrayList<>(sizes);
+        this.mListener = listener;
+        this.mStarted = 0;
+        this.mFailed = 0;
+        this.mStartTime = SystemClock.elapsedRealtime();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            mRunning[stage] = 0;
+            mCompleted[stage] = 0;
+        }
+
+        isRunning = true;
+        mToken = new CancellationToken();
+        mResolveExecutor = Executors.newFixedThreadPool(mConcurrency[STAGE_RESOLVE]);
+        mDownloadExecutor = Executors.newFixedThreadPool(mConcurrency[STAGE_DOWNLOAD]);
+        mListener.onProgress(getProgress());
+        pump();
+    }
+
+    /**
+     * To stop the batch, images not yet analysed are dropped
+     * Items already analysed are still added
+     */
+    public void cancel() {
+        // Guard Code
+        if (!isRunning) {
+            return;
+        }
+
+        for (int stage = 0; stage < STAGE_NAMES.length - 1; stage++) {
+            for (Job job : mQueues.get(stage)) {
+                job.release();
+            }
+            mQueues.get(stage).clear();
+        }
+        finish(true);
+    }
+
+    /**
+     * To check whether the batch runs
+     * @return true until the batch is complete or cancelled
+     */
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    /**
+     * To read the dimensions typed by the user
+     * Dimensions are separated by commas, each one being "width x height" or one side of a square
+     * @param text dimensions typed
+     * @return dimensions as {width, height}
+     * @throws IllegalArgumentException if any of the dimensions is not valid
+     */
+    public static List<int[]> parseSizes(String text) {
+        List<int[]> sizes = new ArrayList<>();
+        for (String part : text.split(",")) {
+            part = part.trim().toLowerCase(Locale.ROOT);
+            if (part.isEmpty()) {
+                continue;
+            }
+
+            // Limit keeps the empty side of a half typed "400x"
+            String[] sides = part.split("x", -1);
+            if (sides.length > 2) {
+                throw new IllegalArgumentException("Invalid dimensions: " + part);
+            }
+            for (String side : sides) {
+                if (side.trim().isEmpty()) {
+                    throw new IllegalArgumentException("Invalid dimensions: " + part);
+                }
+            }
+            int width = Integer.parseInt(sides[0].trim());
+            int height = sides.length == 2 ? Integer.parseInt(sides[1].trim()) : width;
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Invalid dimensions: " + part);
+            }
+            sizes.add(new int[]{width, height});
+        }
+
+        if (sizes.isEmpty()) {
+            throw new IllegalArgumentException("No dimensions");
+        }
+        return sizes;
+    }
+
+    // Scheduling methods
+
+    /**
+     * To start all the work the limits allow, the later stages first so that
+     * the images already in the pipeline leave it before new ones enter
+     */
+    private void pump() {
+        // Guard Code
+        if (!isRunning) {
+            return;
+        }
+
+        persistBatch(false);
+
+        for (int stage = STAGE_ANALYZE; stage >= STAGE_RESOLVE; stage--) {
+            while (mRunning[stage] < mConcurrency[stage] && hasRoomAfter(stage)) {
+                Job job;
+                if (stage == STAGE_RESOLVE) {
+                    // Guard Code
+                    if (mStarted == mTotal) {
+                        break;
+                    }
+                    job = new Job(mSizes.get(mStarted % mSizes.size()), mToken);
+                    mStarted++;
+                } else {
+                    job = mQueues.get(stage).poll();
+                    if (job == null) {
+                        break;
+                    }
+                }
+
+                mRunning[stage]++;
+                startStage(stage, job);
+            }
+        }
+
+        if (mStarted == mTotal && isIdle()) {
+            finish(false);
+        }
+    }
+
+    /**
+     * To check whether all the images started left the pipeline
+     * @return true if no stage before persist has work running or waiting
+     */
+    private boolean isIdle() {
+        for (int stage = STAGE_RESOLVE; stage < STAGE_PERSIST; stage++) {
+            if (mRunning[stage] > 0 || (stage > STAGE_RESOLVE && !mQueues.get(stage).isEmpty())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * To check whether the stage may start one more image
+     * The images it is working on count as already waiting for the next stage
+     * @param stage stage to start
+     * @return true if the next stage has room for its result
+     */
+    private boolean hasRoomAfter(int stage) {
+        int waiting = mQueues.get(stage + 1).size() + mRunning[stage];
+        // Persist takes the items a batch at a time, a smaller queue would never fill it
+        int capacity = stage + 1 == STAGE_PERSIST ? Math.max(mQueueCapacity, mBatchSize) : mQueueCapacity;
+        return waiting < capacity;
+    }
+
+    /**
+     * To start the work of the stage on the image
+     * @param stage stage to start
+     * @param job image to work on
+     */
+    private void startStage(int stage, Job job) {
+        switch (stage) {
+            case STAGE_RESOLVE:
+                resolve(job);
+                break;
+            case STAGE_DOWNLOAD:
+                download(job);
+                break;
+            case STAGE_DECODE:
+                decode(job);
+                break;
+            case STAGE_ANALYZE:
+                analyze(job);
+                break;
+        }
+    }
+
+    /**
+     * To note the end of the stage for the image and hand it to the next stage
+     * @param stage stage done
+     * @param job image worked on
+     * @param error error of the stage, null if it succeeded
+     */
+    private void onStageDone(int stage, Job job, String error) {
+        // Cancelled batch is over, its late results are dropped,
+        // even once the next batch runs as its resolve workers ignore the interrupts
+        if (!isRunning || job.token != mToken) {
+            job.release();
+            return;
+        }
+
+        mRunning[stage]--;
+        if (error == null) {
+            mCompleted[stage]++;
+            mQueues.get(stage + 1).add(job);
+        } else {
+            System.err.println(STAGE_NAMES[stage] + " failed: " + error);
+            mFailed++;
+            job.release();
+        }
+
+        mListener.onProgress(getProgress());
+        pump();
+    }
+
+    /**
+     * To hand the analysed items to the listener once a batch is ready
+     * @param isLast true to hand the items even if the batch is not full
+     */
+    private void persistBatch(boolean isLast) {
+        ArrayDeque<Job> queue = mQueues.get(STAGE_PERSIST);
+        while (queue.size() >= mBatchSize || (isLast && !queue.isEmpty())) {
+            List<Item> items = new ArrayList<>();
+            while (items.size() < mBatchSize && !queue.isEmpty()) {
+                items.add(queue.poll().toItem());
+            }
+            mCompleted[STAGE_PERSIST] += items.size();
+
+            // Thumbnails are made in the background, the images are in the mirror by now
+            for (Item item : items) {
+                mThumbnailStore.create(item.url);
+            }
+            mListener.onItemsReady(items);
+        }
+    }
+
+    /**
+     * To end the batch and stop its workers
+     * @param isCancelled true if the user cancelled it
+     */
+    private void finish(boolean isCancelled) {
+        // Guard Code
+        if (!isRunning) {
+            return;
+        }
+
+        persistBatch(true);
+        isRunning = false;
+        mToken.cancel();
+        mResolveExecutor.shutdownNow();
+        mResolveExecutor = null;
+        mDownloadExecutor.shutdownNow();
+        mDownloadExecutor = null;
+
+        Progress progress = getProgress();
+        mListener.onComplete(progress, isCancelled);
+    }
+
+    /**
+     * To get the progress of the batch
+     * @return progress of the batch so far
+     */
+    private Progress getProgress() {
+        double seconds = Math.max(1, SystemClock.elapsedRealtime() - mStartTime) / 1000.0;
+        double[] throughput = new double[STAGE_NAMES.length];
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            throughput[stage] = mCompleted[stage] / seconds;
+        }
+        return new Progress(mTotal, mCompleted[STAGE_PERSIST], mFailed, throughput);
+    }
+
+    // Stage methods
+
+    /**
+     * To resolve the redirect of the random image on a resolve worker
+     * @param job image to work on
+     */
+    private void resolve(Job job) {
+        mResolveExecutor.execute(() -> {
+            String error = null;
+            try {
+                job.url = mRedirectedUrlHelper.getRedirectUrl(job.sourceUrl, job.token);
+            } catch (IOException e) {
+                error = e.toString();
+            }
+
+            String result = error;
+            mMainHandler.post(() -> onStageDone(STAGE_RESOLVE, job, result));
+        });
+    }
+
+    /**
+     * To download the image into the image mirror on a download worker,
+     * the decode stage reads it from there
+     * Not through Glide, whose download would keep a second copy in its disk cache
+     * @param job image to work on
+     */
+    private void download(Job job) {
+        mDownloadExecutor.execute(() -> {
+            String error = null;
+            try {
+                mImageMirror.download(job.url, job.token);
+            } catch (IOException e) {
+                error = e.toString();
+            }
+
+            String result = error;
+            mMainHandler.post(() -> onStageDone(STAGE_DOWNLOAD, job, result));
+        });
+    }
+
+    /**
+     * To decode the downloaded image at the size of the analysis
+     * @param job image to work on
+     */
+    private void decode(Job job) {
+        CustomTarget<Bitmap> target = new CustomTarget<Bitmap>() {
+            @Override
+            public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+                job.token.removeOnCancelListener(job.cancelLoad);
+                job.isDecoded = true;
+                job.bitmap = resource;
+                job.target = this;
+                onStageDone(STAGE_DECODE, job, null);
+            }
+
+            @Override
+            public void onLoadCleared(@Nullable Drawable placeholder) {
+            }
+
+            @Override
+            public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                job.token.removeOnCancelListener(job.cancelLoad);
+                onStageDone(STAGE_DECODE, job, "Decode failed");
+            }
+        };
+
+        // Decoding still running when the batch is cancelled is stopped,
+        // a decoded bitmap is released by its job or its analysis instead
+        job.cancelLoad = () -> {
+            if (!job.isDecoded) {
+                clearLater(target);
+            }
+        };
+        job.token.addOnCancelListener(job.cancelLoad);
+
+        MachineLearningModelHelper.loadForAnalysis(mContext, job.url).into(target);
+    }
+
+    /**
+     * To find the colors and the labels of the decoded image
+     * The analysis owns the bitmap from here and gives it back to Glide once nothing reads it
+     * @param job image to work on
+     */
+    private void analyze(Job job) {
+        CustomTarget<Bitmap> target = job.target;
+        Bitmap bitmap = job.bitmap;
+        job.target = null;
+        job.bitmap = null;
+
+        mAnalysisCache.getData(job.url, bitmap, job.token, new MachineLearningModelHelper.OnCompleteListener() {
+            @Override
+            public void onSuccess(Set<Integer> colors, List<String> labels) {
+                job.colors = colors;
+                job.labels = labels;
+                onStageDone(STAGE_ANALYZE, job, null);
+            }
+
+            @Override
+            public void onError(String error) {
+                onStageDone(STAGE_ANALYZE, job, error);
+            }
+
+            @Override
+            public void onBitmapReleased() {
+                clearLater(target);
+            }
+        });
+    }
+
+    /**
+     * To clear the request once its callback is over, Glide does not allow it from inside
+     * @param target target of the request
+     */
+    private void clearLater(CustomTarget<?> target) {
+        mMainHandler.post(() -> Glide.with(mContext).clear(target));
+    }
+
+    /**
+     * Represents the image going through the pipeline
+     */
+    private class Job {
+        // Cancellation of the batch the image belongs to
+        final CancellationToken token;
+        // Url of the random image
+        final String sourceUrl;
+        // Url it resolved to, set by the resolve stage
+        String url;
+        // Decoded image, set by the decode stage until the analysis is over
+        Bitmap bitmap;
+        // Target holding the decoded image in Glide
+        CustomTarget<Bitmap> target;
+        // To check whether the decode stage gave the image
+        boolean isDecoded;
+        // Stops the decode running when the batch is cancelled
+        Runnable cancelLoad;
+        // Colors and labels, set by the analyze stage
+        Set<Integer> colors;
+        List<String> labels;
+
+        Job(int[] size, CancellationToken token) {
+            this.token = token;
+            this.sourceUrl = size[0] == size[1]
+                    ? String.format(Locale.ROOT, "https://picsum.photos/%d", size[0])
+                    : String.format(Locale.ROOT, "https://picsum.photos/%d/%d", size[0], size[1]);
+        }
+
+        /**
+         * To give the decoded image back to Glide
+         */
+        void release() {
+            if (target != null) {
+                clearLater(target);
+                target = null;
+                bitmap = null;
+            }
+        }
+
+        /**
+         * To make the item from the result of the analysis
+         * @return item with the first color and label found
+         */
+        Item toItem() {
+            int color = colors.isEmpty() ? 0 : colors.iterator().next();
+            String label = labels.isEmpty() ? DEFAULT_LABEL : labels.get(0);
+            return new Item(url, color, label);
+        }
+    }
+
+    /**
+     * Represents the progress of the batch
+     */
+    public static class Progress {
+        // Number of the images requested
+        public final int total;
+        // Number of the images added
+        public final int added;
+        // Number of the images which could not be added
+        public final int failed;
+        // Images done per second by each stage
+        public final double[] throughput;
+
+        Progress(int total, int added, int failed, double[] throughput) {
+            this.total = total;
+            this.added = added;
+            this.failed = failed;
+            this.throughput = throughput;
+        }
+
+        /**
+         * To get the throughput of every stage as text
+         * @return one line per stage
+         */
+        public String getThroughputText() {
+            StringBuilder text = new StringBuilder();
+            for (int stage = 0; stage < throughput.length; stage++) {
+                text.append(String.format(Locale.getDefault(), "%s: %.1f/s%n", STAGE_NAMES[stage], throughput[stage]));
+            }
+            return text.toString().trim();
+        }
+    }
+
+    /**
+     * Interface for the callbacks as the batch goes on
+     */
+    public interface OnProgressListener {
+        /**
+         * when a batch of items is analysed and is to be added
+         * @param items items to be added
+         */
+        void onItemsReady(List<Item> items);
+
+        /**
+         * when any image moved on to the next stage or failed
+         * @param progress progress of the batch so far
+         */
+        void onProgress(Progress progress);
+
+        /**
+         * when all the images are added or failed, or the batch is cancelled
+         * @param progress final progress of the batch
+         * @param isCancelled true if the batch was cancelled
+         */
+        void onComplete(Progress progress, boolean isCancelled);
+    }
+}
@@ -0,0 +1,143 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helper class sharing one memory policy between the caches of the app
+ * Every cache registers with its priority, and when the system asks for memory the caches
+ * are trimmed in the order of their priority, the ones cheapest to fill again first
+ * The deeper the memory pressure, the more priorities are trimmed
+ */
+public class CacheCoordinator {
+    // Images fetched ahead of their use, nothing shown needs them
+    public static final int PRIORITY_PREFETCHED = 0;
+    // Results kept to skip reading or asking them again, cheap to get back
+    public static final int PRIORITY_LOOKUPS = 1;
+    // Decoded images, decoded again when shown
+    public static final int PRIORITY_DECODED = 2;
+    // Loaded models, slow to load again
+    public static final int PRIORITY_MODELS = 3;
+
+    // Trim level from which the caches of every priority are trimmed, by priority
+    // The models wait for the app to be in the background list, hiding the app alone is no
+    // memory pressure and the next image would pay the whole load of the model
+    private static final int[] TRIM_LEVELS = {
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE,
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW,
+            ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL,
+            ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+    };
+
+    // Caches registered, in the order of their priority
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * To register the cache, it is trimmed after the caches of lower priority
+     * @param priority one of the priorities of the coordinator
+     * @param cache cache to be trimmed
+     */
+    public synchronized void register(int priority, TrimmableCache cache) {
+        // Guard Code
+        if (priority < 0 || priority >= TRIM_LEVELS.length) {
+            throw new IllegalArgumentException("Unknown priority " + priority);
+        }
+
+        // After the caches of the same priority, so they are trimmed in the order registered
+        int index = 0;
+        while (index < mEntries.size() && mEntries.get(index).priority <= priority) {
+            index++;
+        }
+        mEntries.add(index, new Entry(priority, cache));
+    }
+
+    /**
+     * To forget the cache, for when its owner is gone
+     * @param cache cache registered before
+     */
+    public synchronized void unregister(TrimmableCache cache) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            if (mEntries.get(i).cache == cache) {
+                mEntries.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * To get the memory taken by all the caches
+     * @return estimated size in bytes
+     */
+    public long getSizeBytes() {
+        long size = 0;
+        for (Entry entry : getEntries()) {
+            size += entry.cache.getSizeBytes();
+        }
+        return size;
+    }
+
+    /**
+     * To trim the caches whose priority the level reaches, lowest priority first
+     * Called on the main thread
+     * @param level trim level given by the system
+     * @return memory reclaimed in bytes
+     */
+    public long trim(int level) {
+        long reclaimed = 0;
+        for (Entry entry : getEntries()) {
+            // Caches after it have higher priorities, which the level does not reach either
+            if (level < TRIM_LEVELS[entry.priority]) {
+                break;
+            }
+
+            long before = entry.cache.getSizeBytes();
+            entry.cache.trim(level);
+            // Work still reading the cache may keep it until it is over
+            reclaimed += Math.max(0, before - entry.cache.getSizeBytes());
+        }
+        return reclaimed;
+    }
+
+    /**
+     * To get the caches, so they are called outside the lock
+     * @return caches in the order of their priority
+     */
+    private synchronized List<Entry> getEntries() {
+        return new ArrayList<>(mEntries);
+    }
+
+    /**
+     * Represents the cache registered
+     */
+    private static class Entry {
+        // Priority of the cache
+        final int priority;
+        // Cache to be trimmed
+        final TrimmableCache cache;
+
+        Entry(int priority, TrimmableCache cache) {
+            this.priority = priority;
+            this.cache = cache;
+        }
+    }
+
+    /**
+     * Interface for the caches trimmed by the coordinator
+     */
+    public interface TrimmableCache {
+        /**
+         * To get the memory taken by the cache
+         * @return estimated size in bytes
+         */
+        long getSizeBytes();
+
+        /**
+         * To let go of the memory of the cache, as much as the level asks
+         * Called on the main thread
+         * @param level trim level given by the system
+         */
+        void trim(int level);
+    }
+}
@@ -0,0 +1,86 @@
+package com.streamliners.galleryapp.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the cancellation of one request, shared by all the stages working on it
+ * A stage checks the token before starting and stops, or drops its result, once it is cancelled
+ * It may be cancelled and checked from any thread, cancelling is done only once
+ */
+public class CancellationToken {
+    // To check whether the request is cancelled
+    private volatile boolean isCancelled;
+    // Callbacks to be run on the cancellation
+    private final List<Runnable> mListeners = new ArrayList<>();
+
+    /**
+     * To cancel the request, the callbacks are run on the calling thread
+     */
+    public void cancel() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            // Guard Code
+            if (isCancelled) {
+                return;
+            }
+
+            isCancelled = true;
+            listeners = new ArrayList<>(mListeners);
+            mListeners.clear();
+
+            // Waking up the stages waiting on the token
+            notifyAll();
+        }
+
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * To check whether the request is cancelled
+     * @return true once it is cancelled
+     */
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+    /**
+     * To run the callback when the request is cancelled, at once if it already is
+     * @param listener callback to be run
+     */
+    public void addOnCancelListener(Runnable listener) {
+        synchronized (this) {
+            if (!isCancelled) {
+                mListeners.add(listener);
+                return;
+            }
+        }
+        listener.run();
+    }
+
+    /**
+     * To forget the callback, for when its stage is over
+     * @param listener callback added before
+     */
+    public synchronized void removeOnCancelListener(Runnable listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * To wait for the time unless the request is cancelled first
+     * @param millis time to wait
+     * @return true if the request is cancelled
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized boolean await(long millis) throws InterruptedException {
+        long endTime = System.currentTimeMillis() + millis;
+        long timeLeft = millis;
+        while (!isCancelled && timeLeft > 0) {
+            wait(timeLeft);
+            timeLeft = endTime - System.currentTimeMillis();
+        }
+        return isCancelled;
+    }
+}
@@ -0,0 +1,72 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.module.AppGlideModule;
+import com.streamliners.galleryapp.MyApp;
+import com.streamliners.galleryapp.models.PicsumImage;
+
+import java.io.InputStream;
+
+/**
+ * Glide module of the app, registers the loaders of its own models
+ * and puts the memory of Glide under the cache coordinator of the app
+ */
+@GlideModule
+public class GalleryGlideModule extends AppGlideModule {
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MyApp app = (MyApp) context.getApplicationContext();
+
+        // Same size Glide picks itself, the cache is kept to know how full it is
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context).build();
+        LruResourceCache memoryCache = new LruResourceCache(calculator.getMemoryCacheSize());
+        builder.setMemoryCache(memoryCache);
+
+        app.getCacheCoordinator().register(CacheCoordinator.PRIORITY_DECODED, new CacheCoordinator.TrimmableCache() {
+            @Override
+            public long getSizeBytes() {
+                long size = memoryCache.getCurrentSize();
+                BitmapPool bitmapPool = Glide.get(app).getBitmapPool();
+                if (bitmapPool instanceof LruBitmapPool) {
+                    size += ((LruBitmapPool) bitmapPool).getCurrentSize();
+                }
+                return size;
+            }
+
+            @Override
+            public void trim(int level) {
+                // Policy of Glide, halved while the app is in use and emptied in the background
+                // The app unregisters the callbacks of Glide, so this is its only trim
+                Glide.get(app).trimMemory(level);
+            }
+        });
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        MyApp app = (MyApp) context.getApplicationContext();
+        registry.prepend(PicsumImage.class, InputStream.class, new PicsumModelLoader.Factory(
+                app.getRedirectedUrlHelper()));
+
+        // Every network image, the random ones included, is read through the mirror
+        registry.prepend(GlideUrl.class, InputStream.class, new MirrorModelLoader.Factory(
+                app.getImageMirror()));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
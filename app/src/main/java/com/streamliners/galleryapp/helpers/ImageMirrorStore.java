@@ -0,0 +1,235 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Helper class to keep the originals of the network images on the device
+ * Every content is stored once in a file named by its hash, and the urls refer to it
+ * from the database, so an image is downloaded once however often it is shown or edited
+ * The contents fit a disk budget, the least recently used ones going first, but the
+ * originals of the items in the gallery are pinned and never removed
+ * Used on the workers of Glide and of the batch ingest
+ */
+public class ImageMirrorStore {
+    // Default size the contents may take
+    public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+
+    // Folder of the originals in the files of the app
+    private static final String DIRECTORY_NAME = "originals";
+    // Prefix of the files being downloaded
+    private static final String TEMP_PREFIX = "download-";
+    // Age after which a file being downloaded is left over from a killed app
+    private static final long TEMP_MAX_AGE_MILLIS = 60 * 60 * 1000;
+    // Size of the buffer for copying the downloads
+    private static final int BUFFER_SIZE = 16 * 1024;
+    // Time to connect and to wait for the data of a download
+    private static final int DOWNLOAD_TIMEOUT_MILLIS = 15_000;
+
+    // Database having the urls of the originals
+    private final databaseHelper mDbHelper;
+    // Folder of the originals
+    private final File mDirectory;
+    // Size the contents may take
+    private final long mBudgetBytes;
+
+    /**
+     * To initialize the store with...
+     * The files no url refers to are removed first, in the background
+     * @param context context of the app
+     * @param dbHelper database having the urls of the originals
+     * @param executor executor for the database work
+     * @param budgetBytes size the contents may take in bytes
+     */
+    public ImageMirrorStore(Context context, databaseHelper dbHelper, ExecutorService executor, long budgetBytes) {
+        this.mDbHelper = dbHelper;
+        this.mDirectory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY_NAME);
+        this.mBudgetBytes = budgetBytes;
+
+        executor.execute(this::prune);
+    }
+
+    /**
+     * To find the original of the url
+     * @param url url of the image
+     * @return file of the original, null if it is not stored
+     */
+    public synchronized File find(String url) {
+        String hash = mDbHelper.fetchOriginalHash(url, System.currentTimeMillis());
+
+        // Guard Code
+        if (hash == null) {
+            return null;
+        }
+
+        File file = new File(mDirectory, hash);
+        if (!file.isFile()) {
+            // File lost, downloaded again
+            mDbHelper.deleteOriginal(url);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * To download the original of the url into the mirror unless it is stored already
+     * Nothing else keeps a copy of it, unlike the downloads going through Glide
+     * Downloading blocks, so it is to be called on a background thread
+     * @param url url of the image
+     * @param token cancellation of the download, closing its connection
+     * @return file of the original
+     * @throws IOException if the image could not be downloaded or stored
+     * @throws InterruptedIOException if the download is cancelled
+     */
+    public File download(String url, CancellationToken token) throws IOException {
+        File file = find(url);
+        if (file != null) {
+            return file;
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(DOWNLOAD_TIMEOUT_MILLIS);
+        connection.setReadTimeout(DOWNLOAD_TIMEOUT_MILLIS);
+
+        // The connection ignores the interrupts, closing it stops the download
+        Runnable cancelListener = connection::disconnect;
+        token.addOnCancelListener(cancelListener);
+        try {
+            // Guard Code
+            if (token.isCancelled()) {
+                throw new InterruptedIOException("Cancelled");
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Download failed with " + responseCode);
+            }
+
+            try (InputStream stream = connection.getInputStream()) {
+                return save(url, stream);
+            }
+        } finally {
+            token.removeOnCancelListener(cancelListener);
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * To store the original of the url, the contents over the budget are removed then
+     * @param url url of the image
+     * @param data content of the image, read till its end
+     * @return file of the original
+     * @throws IOException if the content could not be read or stored
+     */
+    public File save(String url, InputStream data) throws IOException {
+        ensureDirectory();
+
+        // Copying and hashing in one pass, under a temporary name till the hash is known
+        File temp = File.createTempFile(TEMP_PREFIX, null, mDirectory);
+        MessageDigest digest = newDigest();
+        long size = 0;
+        try (OutputStream outputStream = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = data.read(buffer)) != -1) {
+                digest.update(buffer, 0, count);
+                outputStream.write(buffer, 0, count);
+                size += count;
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+
+        File file = new File(mDirectory, toHex(digest.digest()));
+        synchronized (this) {
+            // Same content stored before, under this or another url
+            if (file.isFile()) {
+                temp.delete();
+            } else if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot store " + url);
+            }
+
+            mDbHelper.saveOriginal(url, file.getName(), size, System.currentTimeMillis());
+            for (String hash : mDbHelper.deleteOriginalsOverBudget(mBudgetBytes, url)) {
+                new File(mDirectory, hash).delete();
+            }
+        }
+        return file;
+    }
+
+    /**
+     * To remove the files no url refers to, left by a killed app or a failed save
+     */
+    private synchronized void prune() {
+        try {
+            ensureDirectory();
+
+            Set<String> hashes = mDbHelper.fetchOriginalHashes();
+            File[] files = mDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            for (File file : files) {
+                // Downloads may be running already
+                boolean isTemp = file.getName().startsWith(TEMP_PREFIX);
+                if (isTemp ? now - file.lastModified() > TEMP_MAX_AGE_MILLIS : !hashes.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e.toString());
+        }
+    }
+
+    /**
+     * To create the folder of the originals if it is not there
+     * @throws IOException if it could not be created
+     */
+    private void ensureDirectory() throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs() && !mDirectory.isDirectory()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+    }
+
+    /**
+     * To get the digest hashing the contents
+     * @return new digest
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * To write the hash in hex format
+     * @param bytes bytes of the hash
+     * @return hash in hex format
+     */
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format(Locale.ROOT, "%02x", b));
+        }
+        return hex.toString();
+    }
+}
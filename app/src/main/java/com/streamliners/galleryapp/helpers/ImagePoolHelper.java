@@ -0,0 +1,294 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helper class keeping a few random images ready for the dimensions used recently
+ * The images are resolved, downloaded and analysed in the background, one at a time
+ * All the methods are to be called on the main thread
+ */
+public class ImagePoolHelper implements CacheCoordinator.TrimmableCache {
+    // Default number of the images kept for each dimensions
+    private static final int DEFAULT_DEPTH = 2;
+    // Default number of the recent dimensions the images are kept for
+    private static final int DEFAULT_MAX_DIMENSIONS = 3;
+    // Default memory allowed for the previews of all the images
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES = 8L * 1024 * 1024;
+    // Default time after which the images are dropped
+    private static final long DEFAULT_EXPIRY_MILLIS = 10 * 60 * 1000;
+
+    // Context of the application, the pool outlives the activities
+    private final Context mContext;
+    // Number of the images kept for each dimensions
+    private final int mDepth;
+    // Memory allowed for the previews of all the images
+    private final long mMemoryBudgetBytes;
+    // Time after which the images are dropped
+    private final long mExpiryMillis;
+
+    // Dimensions used recently as {width, height}, least recent first
+    private final LinkedHashMap<String, int[]> mRecentDimensions;
+    // Images ready for every dimensions, oldest first
+    private final Map<String, ArrayDeque<PooledImage>> mImages = new HashMap<>();
+    // Memory taken by the previews in the pool
+    private long mBytes;
+    // To fetch only one image at a time
+    private boolean isRefilling;
+    // Cancellation of the fetch running, null if there is none
+    private CancellationToken mFetchToken;
+
+    /**
+     * To construct the pool with the default limits
+     * @param context context of the application
+     */
+    public ImagePoolHelper(Context context) {
+        this(context, DEFAULT_DEPTH, DEFAULT_MAX_DIMENSIONS, DEFAULT_MEMORY_BUDGET_BYTES, DEFAULT_EXPIRY_MILLIS);
+    }
+
+    /**
+     * To construct the pool with...
+     * @param context context of the application
+     * @param depth number of the images kept for each dimensions
+     * @param maxDimensions number of the recent dimensions the images are kept for
+     * @param memoryBudgetBytes memory allowed for the previews of all the images
+     * @param expiryMillis time after which the images are dropped
+     */
+    public ImagePoolHelper(Context context, int depth, int maxDimensions, long memoryBudgetBytes, long expiryMillis) {
+        this.mContext = context.getApplicationContext();
+        this.mDepth = depth;
+        this.mMemoryBudgetBytes = memoryBudgetBytes;
+        this.mExpiryMillis = expiryMillis;
+        this.mRecentDimensions = new LinkedHashMap<String, int[]>(maxDimensions, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+                if (size() <= maxDimensions) {
+                    return false;
+                }
+
+                // Images of the dimensions not used anymore are dropped too
+                releaseAll(mImages.remove(eldest.getKey()));
+                return true;
+            }
+        };
+    }
+
+    /**
+     * To take a ready image of the dimensions, the dimensions become the most recent
+     * The caller owns the image and has to release it once its preview is not shown
+     * @param width width of the image
+     * @param height height of the image
+     * @return image ready to be shown, null if there is none
+     */
+    public PooledImage take(int width, int height) {
+        String key = getKey(width, height);
+        mRecentDimensions.put(key, new int[]{width, height});
+        removeExpired();
+
+        ArrayDeque<PooledImage> images = mImages.get(key);
+        if (images == null || images.isEmpty()) {
+            return null;
+        }
+
+        PooledImage image = images.poll();
+        mBytes -= image.mByteCount;
+        return image;
+    }
+
+    /**
+     * To fetch the next missing image in the background, the most recent dimensions first
+     * Each image fetched triggers the next one until the pool is full
+     */
+    public void refill() {
+        // Guard Code
+        if (isRefilling) {
+            return;
+        }
+
+        removeExpired();
+        List<int[]> dimensions = new ArrayList<>(mRecentDimensions.values());
+        Collections.reverse(dimensions);
+        for (int[] dimension : dimensions) {
+            ArrayDeque<PooledImage> images = mImages.get(getKey(dimension[0], dimension[1]));
+            int count = images == null ? 0 : images.size();
+            if (count < mDepth && mBytes < mMemoryBudgetBytes) {
+                fetchImage(dimension[0], dimension[1]);
+                return;
+            }
+        }
+    }
+
+    /**
+     * To drop all the images, for when the memory is low
+     */
+    public void clear() {
+        // Image being fetched would only be dropped once ready
+        if (mFetchToken != null) {
+            mFetchToken.cancel();
+            mFetchToken = null;
+            isRefilling = false;
+        }
+
+        for (ArrayDeque<PooledImage> images : mImages.values()) {
+            releaseAll(images);
+        }
+        mImages.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * To get the memory taken by the previews in the pool
+     * @return size in bytes
+     */
+    @Override
+    public long getSizeBytes() {
+        return mBytes;
+    }
+
+    /**
+     * To drop all the images, the pool is filled again on the next use of the add dialog
+     * @param level trim level given by the system
+     */
+    @Override
+    public void trim(int level) {
+        clear();
+    }
+
+    /**
+     * To fetch and analyse a random image, the image analysed is kept as its preview
+     * @param width width of the image
+     * @param height height of the image
+     */
+    private void fetchImage(int width, int height) {
+        isRefilling = true;
+        CancellationToken token = new CancellationToken();
+        mFetchToken = token;
+        String key = getKey(width, height);
+
+        new ItemHelper()
+                .fetchData(mContext, width, height, token, new ItemHelper.OnCompleteListener() {
+                    @Override
+                    public void onSuccess(String url, Set<Integer> colors, List<String> labels, SharedBitmap preview) {
+                        isRefilling = false;
+                        mFetchToken = null;
+                        PooledImage image = new PooledImage(url, colors, labels, preview);
+
+                        // Dimensions no longer used or no room left
+                        if (!mRecentDimensions.containsKey(key) || mBytes + image.mByteCount > mMemoryBudgetBytes) {
+                            image.release();
+                            return;
+                        }
+
+                        ArrayDeque<PooledImage> images = mImages.get(key);
+                        if (images == null) {
+                            images = new ArrayDeque<>();
+                            mImages.put(key, images);
+                        }
+                        images.add(image);
+                        mBytes += image.mByteCount;
+
+                        refill();
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        // Not retried, the next use of the dialog refills again
+                        isRefilling = false;
+                        mFetchToken = null;
+                        System.err.println(error);
+                    }
+                });
+    }
+
+    /**
+     * To drop the images kept for longer than the expiry time
+     */
+    private void removeExpired() {
+        long time = SystemClock.elapsedRealtime();
+        for (ArrayDeque<PooledImage> images : mImages.values()) {
+            Iterator<PooledImage> iterator = images.iterator();
+            while (iterator.hasNext()) {
+                PooledImage image = iterator.next();
+                if (time - image.mCreatedTime > mExpiryMillis) {
+                    iterator.remove();
+                    mBytes -= image.mByteCount;
+                    image.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * To release the images and forget their memory
+     * @param images images to be released, may be null
+     */
+    private void releaseAll(ArrayDeque<PooledImage> images) {
+        // Guard Code
+        if (images == null) {
+            return;
+        }
+
+        for (PooledImage image : images) {
+            mBytes -= image.mByteCount;
+            image.release();
+        }
+        images.clear();
+    }
+
+    /**
+     * To get the key of the dimensions
+     * @return key of the dimensions in the maps
+     */
+    private static String getKey(int width, int height) {
+        return String.format(Locale.ROOT, "%dx%d", width, height);
+    }
+
+    /**
+     * Represents the image ready to be shown
+     */
+    public class PooledImage {
+        // Url of the image
+        public final String url;
+        // Major colors in the image
+        public final Set<Integer> colors;
+        // Labels of the image
+        public final List<String> labels;
+        // Preview of the image, valid until released
+        public final Bitmap bitmap;
+
+        // Image analysed, shown as the preview
+        private final SharedBitmap mPreview;
+        // Memory taken by the preview
+        private final long mByteCount;
+        // Time at which the image was ready
+        private final long mCreatedTime = SystemClock.elapsedRealtime();
+
+        PooledImage(String url, Set<Integer> colors, List<String> labels, SharedBitmap preview) {
+            this.url = url;
+            this.colors = colors;
+            this.labels = labels;
+            this.bitmap = preview.bitmap;
+            this.mPreview = preview;
+            this.mByteCount = preview.getByteCount();
+        }
+
+        /**
+         * To give the preview back to Glide, it is not to be shown afterwards
+         */
+        public void release() {
+            mPreview.release();
+        }
+    }
+}
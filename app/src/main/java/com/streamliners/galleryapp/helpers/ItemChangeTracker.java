@@ -0,0 +1,110 @@
+package com.streamliners.galleryapp.helpers;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Helper class to keep track of the rows changed since the last save
+ * Only the changed rows are written back to the database
+ */
+public class ItemChangeTracker {
+    // Helper to write the changes to
+    private final databaseHelper mDbHelper;
+    // Changed rows keyed by their id, null item for the deleted rows
+    private Map<Long, Item> mChanges = new LinkedHashMap<>();
+    // Id for the next item added
+    private long mNextId;
+    // Position for the next item added
+    private long mNextPosition;
+
+    /**
+     * To initialize the tracker with...
+     * @param dbHelper helper of the database in which the items are stored
+     */
+    public ItemChangeTracker(databaseHelper dbHelper) {
+        this.mDbHelper = dbHelper;
+        this.mNextId = dbHelper.fetchLastItemId() + 1;
+        this.mNextPosition = dbHelper.fetchLastPosition() + 1;
+    }
+
+    /**
+     * To record the item added in the list
+     * @param item item added
+     */
+    public synchronized void recordAdd(Item item) {
+        item.id = mNextId++;
+        item.position = mNextPosition++;
+        mChanges.put(item.id, item);
+    }
+
+    /**
+     * To record the item changed in the list
+     * @param oldItem item being replaced
+     * @param newItem item replacing it
+     */
+    public synchronized void recordEdit(Item oldItem, Item newItem) {
+        newItem.id = oldItem.id;
+        newItem.position = oldItem.position;
+        mChanges.put(newItem.id, newItem);
+    }
+
+    /**
+     * To record the item removed from the list
+     * @param item item removed
+     */
+    public synchronized void recordDelete(Item item) {
+        mChanges.put(item.id, null);
+    }
+
+    /**
+     * To record the two items swapped in the list
+     * Only the positions of the two items are exchanged
+     * @param first first item
+     * @param second second item
+     */
+    public synchronized void recordSwap(Item first, Item second) {
+        long position = first.position;
+        first.position = second.position;
+        second.position = position;
+
+        mChanges.put(first.id, first);
+        mChanges.put(second.id, second);
+    }
+
+    /**
+     * To check for the changes not saved yet
+     * @return true if there is any change to be saved
+     */
+    public synchronized boolean hasChanges() {
+        return !mChanges.isEmpty();
+    }
+
+    /**
+     * To write all the recorded changes to the database in one transaction
+     */
+    public void flush() {
+        Map<Long, Item> changes;
+
+        // Take the pending changes so that new ones can be recorded meanwhile
+        synchronized (this) {
+            if (mChanges.isEmpty()) {
+                return;
+            }
+            changes = mChanges;
+            mChanges = new LinkedHashMap<>();
+        }
+
+        try {
+            mDbHelper.applyChanges(changes);
+        } catch (RuntimeException e) {
+            // Put the changes back, newer ones recorded meanwhile take priority
+            synchronized (this) {
+                changes.putAll(mChanges);
+                mChanges = changes;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.streamliners.galleryapp.helpers;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.List;
+
+/**
+ * Helper class to find the differences between two lists of the items
+ */
+public class ItemDiffCallback extends DiffUtil.Callback {
+    // List before the change
+    private final List<Item> mOldItems;
+    // List after the change
+    private final List<Item> mNewItems;
+
+    /**
+     * To initialize the callback with...
+     * @param oldItems list before the change
+     * @param newItems list after the change
+     */
+    public ItemDiffCallback(List<Item> oldItems, List<Item> newItems) {
+        this.mOldItems = oldItems;
+        this.mNewItems = newItems;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldItems.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewItems.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mOldItems.get(oldItemPosition).id == mNewItems.get(newItemPosition).id;
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        Item oldItem = mOldItems.get(oldItemPosition);
+        Item newItem = mNewItems.get(newItemPosition);
+
+        return oldItem.color == newItem.color
+                && oldItem.url.equals(newItem.url)
+                && oldItem.label.equals(newItem.label);
+    }
+}
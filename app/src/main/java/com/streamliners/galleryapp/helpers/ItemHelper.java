@@ -1,15 +1,9 @@
 package com.streamliners.galleryapp.helpers;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 
-import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.CustomTarget;
-import com.bumptech.glide.request.transition.Transition;
+import com.streamliners.galleryapp.MyApp;
+import com.streamliners.galleryapp.models.PicsumImage;
 
 import java.util.List;
 import java.util.Locale;
@@ -17,105 +11,109 @@ import java.util.Set;
 
 /**
  * Helper class to fetch data for an item
+ * Every fetch is a request of its own, stopped by cancelling its token
  */
 public class ItemHelper {
-    // context of the main activity
-    private Context mContext;
-    // Listener to call the data is fetched
-    private OnCompleteListener mListener;
-
-    // url of the image
-    private String mUrl;
-
     /**
      * To fetch image of the rectangular dimensions
      * @param context context of the activity
      * @param width width of the image
      * @param height height of the image
-     * @param listener listener for the callbacks
+     * @param token cancellation of the fetch, to be cancelled on the main thread
+     * @param listener listener for the callbacks, not called once the fetch is cancelled
      */
-    public void fetchData(Context context, int width, int height, OnCompleteListener listener) {
-        this.mListener = listener;
-        this.mContext = context;
-
+    public void fetchData(Context context, int width, int height, CancellationToken token, OnCompleteListener listener) {
         // url for the rectangular image
         String rectangularImageUrl = "https://picsum.photos/%d/%d";
 
         // to fetch image with the given url
-        fetchImage(String.format(Locale.getDefault(), rectangularImageUrl, width, height));
+        new FetchRequest(context, token, listener)
+                .fetchImage(String.format(Locale.getDefault(), rectangularImageUrl, width, height));
     }
 
     /**
      * To fetch image of the square dimensions
      * @param context context of the activity
      * @param side width and height of the image
-     * @param listener listener for the callbacks
+     * @param token cancellation of the fetch, to be cancelled on the main thread
+     * @param listener listener for the callbacks, not called once the fetch is cancelled
      */
-    public void fetchData(Context context, int side, OnCompleteListener listener) {
-        this.mListener = listener;
-        this.mContext = context;
-
+    public void fetchData(Context context, int side, CancellationToken token, OnCompleteListener listener) {
         // url for the square image
         String squareImageUrl = "https://picsum.photos/%d";
 
         // to fetch image with the given url
-        fetchImage(String.format(Locale.getDefault(), squareImageUrl, side));
+        new FetchRequest(context, token, listener)
+                .fetchImage(String.format(Locale.getDefault(), squareImageUrl, side));
     }
 
     /**
-     * To fetch random image from the provided url
-     * @param url url from which the image is to be fetched
+     * Represents one fetch, from the redirect to the analysis of the image
+     * Every stage checks the token, and the image decoded once is shared by the analysis
+     * and the listener, it goes back to Glide once both released it
      */
-    private void fetchImage(String url) {
-        // Fetching the redirected URL through new object
-        new RedirectedUrlHelper()
-                .fetchRedirectedURL(new RedirectedUrlHelper.OnCompleteListener() {
-            @Override
-            public void onFetched(String redirectedUrl) {
-                // setting the url
-                mUrl = redirectedUrl;
-
-                // fetching image using glide
-                Glide.with(mContext)
-                        .asBitmap()
-                        .load(mUrl)
-                        .into(new CustomTarget<Bitmap>() {
-                            @Override
-                            public void onResourceReady(@NonNull Bitmap bitmap, @Nullable Transition<? super Bitmap> transition) {
-                                new MachineLearningModelHelper()
-                                        .getData(bitmap, new MachineLearningModelHelper.OnCompleteListener() {
-                                            @Override
-                                            public void onSuccess(Set<Integer> colors, List<String> labels) {
-                                                mListener.onSuccess(mUrl, colors, labels);
-                                            }
-
-                                            @Override
-                                            public void onError(String error) {
-                                                mListener.onError(error);
-                                            }
-                                        });
-                            }
-
-                            @Override
-                            public void onLoadCleared(@Nullable Drawable placeholder) {
-
-                            }
-
-                            @Override
-                            public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                                super.onLoadFailed(errorDrawable);
-
-                                // callback for the error
-                                mListener.onError("Image load failed");
-                            }
-                        });
-            }
-
-            @Override
-            public void onError(String error) {
-                mListener.onError(error);
-            }
-        }).execute(url);
+    private static class FetchRequest {
+        // Context of the application, the request may outlive the activity
+        private final Context mContext;
+        // Cancellation of the fetch
+        private final CancellationToken mToken;
+        // Listener to call the data is fetched
+        private final OnCompleteListener mListener;
+
+        FetchRequest(Context context, CancellationToken token, OnCompleteListener listener) {
+            this.mContext = context.getApplicationContext();
+            this.mToken = token;
+            this.mListener = listener;
+        }
+
+        /**
+         * To fetch random image from the provided url
+         * @param url url from which the image is to be fetched
+         */
+        void fetchImage(String url) {
+            // The redirect is resolved by Glide while it downloads the image
+            PicsumImage image = new PicsumImage(url, mToken);
+
+            // fetching image using glide, at the size needed for the analysis
+            SharedBitmap.load(mContext, MachineLearningModelHelper.loadForAnalysis(mContext, image), mToken,
+                    new SharedBitmap.OnLoadListener() {
+                        @Override
+                        public void onLoaded(SharedBitmap bitmap) {
+                            analyseImage(image.getResolvedUrl(), bitmap);
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            mListener.onError(error);
+                        }
+                    });
+        }
+
+        /**
+         * To get the colors and the labels of the loaded image
+         * @param url url of the image loaded
+         * @param bitmap image loaded, its reference is held by the analysis
+         */
+        private void analyseImage(String url, SharedBitmap bitmap) {
+            ((MyApp) mContext).getAnalysisCache()
+                    .getData(url, bitmap.bitmap, mToken, new MachineLearningModelHelper.OnCompleteListener() {
+                        @Override
+                        public void onSuccess(Set<Integer> colors, List<String> labels) {
+                            // Comes before the release, the image is still held
+                            mListener.onSuccess(url, colors, labels, bitmap.retain());
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            mListener.onError(error);
+                        }
+
+                        @Override
+                        public void onBitmapReleased() {
+                            bitmap.release();
+                        }
+                    });
+        }
     }
 
     /**
@@ -127,8 +125,9 @@ public class ItemHelper {
          * @param url url of the image
          * @param colors colors in the image
          * @param labels labels of the image
+         * @param preview image analysed, to be released by the listener once it is not shown
          */
-        void onSuccess(String url, Set<Integer> colors, List<String> labels);
+        void onSuccess(String url, Set<Integer> colors, List<String> labels, SharedBitmap preview);
 
         /**
          * when error occurred due to any specific reason
@@ -0,0 +1,532 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.models.ItemQuery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Helper class to load the items of the list from the database page by page
+ * Only a few recently used pages are kept in the memory
+ * All the methods are to be called on the main thread
+ */
+public class ItemPagingSource {
+    // Number of the items in a page
+    public static final int PAGE_SIZE = 30;
+    // Maximum number of the pages kept in the memory
+    private static final int MAX_CACHED_PAGES = 6;
+    // Neighbour page is requested when the item is this close to the end of its page
+    private static final int PREFETCH_DISTANCE = 10;
+
+    // Helper to read the items from
+    private final databaseHelper mDbHelper;
+    // Tracker whose changes are saved before reading
+    private final ItemChangeTracker mTracker;
+    // Executor for the database work
+    private final ExecutorService mExecutor;
+    // Handler to post the results on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Listener for the callbacks
+    private OnChangeListener mListener;
+
+    // Pages in the memory keyed by their index, least recently used is removed first
+    private final Map<Integer, List<Item>> mPages =
+            new LinkedHashMap<Integer, List<Item>>(MAX_CACHED_PAGES + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, List<Item>> eldest) {
+                    if (size() > MAX_CACHED_PAGES) {
+                        mPositions = null;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    // Indexes of the pages being loaded
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+    // Positions of the items in the memory keyed by their ids, null when it is to be built again
+    private Map<Long, Integer> mPositions;
+
+    // Query for the items
+    private ItemQuery mQuery = ItemQuery.ALL;
+    // Number of the items
+    private int mSize;
+    // Changed when the items are shifted, so that the pages loaded before are dropped
+    private int mGeneration;
+    // Changed when the whole list is reloaded
+    private int mReloadGeneration;
+    // Reload or narrowing in progress, cancelled when a newer one starts
+    private Future<?> mPendingReload;
+    // Signal to cancel the database query of the reload in progress
+    private CancellationSignal mReloadSignal;
+
+    /**
+     * To initialize the source with...
+     * @param dbHelper helper of the database in which the items are stored
+     * @param tracker tracker for the changes not saved yet
+     * @param executor executor for the database work
+     */
+    public ItemPagingSource(databaseHelper dbHelper, ItemChangeTracker tracker, ExecutorService executor) {
+        this.mDbHelper = dbHelper;
+        this.mTracker = tracker;
+        this.mExecutor = executor;
+    }
+
+    /**
+     * To set the listener for the callbacks
+     * @param listener listener for the callbacks
+     */
+    public void setOnChangeListener(OnChangeListener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * To get the query for the items
+     * @return the query
+     */
+    public ItemQuery getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * To change the query for the items and load them again
+     * When the new query only narrows or reorders the previous one and all its items are in the memory,
+     * they are filtered and sorted without going to the database
+     * @param query new query
+     */
+    public void setQuery(ItemQuery query) {
+        ItemQuery oldQuery = mQuery;
+        mQuery = query;
+
+        if (query.isNarrowerThan(oldQuery) && isFullyLoaded()) {
+            narrow(query);
+        } else {
+            reload();
+        }
+    }
+
+    /**
+     * To get the number of the items
+     * @return number of the items
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * To get the item at the position
+     * @param position position of the item
+     * @return the item, null if its page is not loaded yet
+     */
+    public Item get(int position) {
+        int pageIndex = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+
+        // Loading the neighbour page before it is needed
+        if (offset >= PAGE_SIZE - PREFETCH_DISTANCE) {
+            requestPage(pageIndex + 1);
+        } else if (offset < PREFETCH_DISTANCE) {
+            requestPage(pageIndex - 1);
+        }
+
+        List<Item> page = mPages.get(pageIndex);
+        if (page == null || offset >= page.size()) {
+            requestPage(pageIndex);
+            return null;
+        }
+        return page.get(offset);
+    }
+
+    /**
+     * To get the item at the position if its page is in the memory
+     * Unlike get, no page is requested and the pages in the memory keep their order,
+     * so it may be called during the layout
+     * @param position position of the item
+     * @return the item, null if its page is not in the memory
+     */
+    public Item peek(int position) {
+        int offset = position % PAGE_SIZE;
+
+        // Looking through the pages, getting one would mark it as recently used
+        for (Map.Entry<Integer, List<Item>> page : mPages.entrySet()) {
+            if (page.getKey() == position / PAGE_SIZE) {
+                return offset < page.getValue().size() ? page.getValue().get(offset) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * To find the position of the item among the items in the memory
+     * Only the pages in the memory are looked at, so the cost does not depend on the number of items
+     * @param id id of the item
+     * @return position of the item, -1 if it is not in the memory
+     */
+    public int indexOf(long id) {
+        if (mPositions == null) {
+            mPositions = new HashMap<>();
+            for (Map.Entry<Integer, List<Item>> page : mPages.entrySet()) {
+                int start = page.getKey() * PAGE_SIZE;
+                List<Item> items = page.getValue();
+                for (int offset = 0; offset < items.size(); offset++) {
+                    mPositions.put(items.get(offset).id, start + offset);
+                }
+            }
+        }
+
+        Integer position = mPositions.get(id);
+        return position == null ? -1 : position;
+    }
+
+    // Changing methods
+
+    /**
+     * To add the item at the end
+     * @param item item to be added
+     */
+    public void append(Item item) {
+        mGeneration++;
+        int position = mSize++;
+        int pageIndex = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+
+        List<Item> page = mPages.get(pageIndex);
+        if (page == null && offset == 0) {
+            page = new ArrayList<>();
+            mPages.put(pageIndex, page);
+        }
+        if (page != null && page.size() == offset) {
+            page.add(item);
+            if (mPositions != null) {
+                mPositions.put(item.id, position);
+            }
+        }
+    }
+
+    /**
+     * To replace the item at the position
+     * @param position position of the item
+     * @param item new item
+     */
+    public void set(int position, Item item) {
+        List<Item> page = mPages.get(position / PAGE_SIZE);
+        if (page != null && position % PAGE_SIZE < page.size()) {
+            page.set(position % PAGE_SIZE, item);
+            if (mPositions != null) {
+                mPositions.put(item.id, position);
+            }
+        }
+    }
+
+    /**
+     * To remove the item at the position
+     * @param position position of the item
+     */
+    public void remove(int position) {
+        mGeneration++;
+        mSize--;
+        mPositions = null;
+        int pageIndex = position / PAGE_SIZE;
+
+        List<Item> page = mPages.get(pageIndex);
+        if (page != null && position % PAGE_SIZE < page.size()) {
+            page.remove(position % PAGE_SIZE);
+        }
+
+        // Shifting the first item of every following page in the memory back by one
+        List<Item> nextPage;
+        while (page != null && page.size() == PAGE_SIZE - 1
+                && (nextPage = mPages.get(pageIndex + 1)) != null && !nextPage.isEmpty()) {
+            page.add(nextPage.remove(0));
+            page = nextPage;
+            pageIndex++;
+        }
+
+        // Pages after a missing one cannot be shifted, so they are loaded again when needed
+        Iterator<Integer> iterator = mPages.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() > pageIndex) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Loading methods
+
+    /**
+     * To load the number of the items and the first page again
+     * The items already loaded are shown till then, and a reload still in progress is cancelled
+     * Searched items are loaded completely when they fit in the memory
+     * If both the old and new items are completely in the memory, the changes are given item by item
+     */
+    public void reload() {
+        int generation = ++mGeneration;
+        int reloadGeneration = ++mReloadGeneration;
+        ItemQuery query = mQuery;
+        CancellationSignal signal = new CancellationSignal();
+        List<Item> oldItems = isFullyLoaded() ? getLoadedItems() : null;
+
+        cancelPendingReload();
+        mReloadSignal = signal;
+        mPendingReload = mExecutor.submit(() -> {
+            int size;
+            List<Item> items;
+            try {
+                mTracker.flush();
+                size = mDbHelper.fetchItemCount(query, signal);
+                int limit = !query.searchText.isEmpty() && size <= PAGE_SIZE * MAX_CACHED_PAGES ?
+                        size : PAGE_SIZE;
+                items = mDbHelper.fetchItems(query, 0, limit, signal);
+            } catch (RuntimeException e) {
+                // Cancelled by a newer reload, or failed
+                if (!signal.isCanceled()) {
+                    System.err.println(e.toString());
+                }
+                return;
+            }
+
+            // Changes item by item are only known when all the items are in the memory
+            DiffUtil.DiffResult diff = oldItems != null && items.size() == size ?
+                    DiffUtil.calculateDiff(new ItemDiffCallback(oldItems, items)) : null;
+            mMainHandler.post(() -> onReloaded(size, items, diff, generation, reloadGeneration));
+        });
+    }
+
+    /**
+     * To filter and sort the items in the memory for the narrower query
+     * Work is done in the background and the changes are given item by item
+     * @param query new query
+     */
+    private void narrow(ItemQuery query) {
+        int generation = ++mGeneration;
+        int reloadGeneration = ++mReloadGeneration;
+        List<Item> oldItems = getLoadedItems();
+
+        cancelPendingReload();
+        mPendingReload = mExecutor.submit(() -> {
+            List<Item> newItems = new ArrayList<>();
+            for (Item item : oldItems) {
+                if (query.matches(item)) {
+                    newItems.add(item);
+                }
+            }
+            Collections.sort(newItems, query.getComparator());
+
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new ItemDiffCallback(oldItems, newItems));
+            mMainHandler.post(() -> onReloaded(newItems.size(), newItems, diff, generation, reloadGeneration));
+        });
+    }
+
+    /**
+     * To cancel the reload or narrowing in progress
+     */
+    private void cancelPendingReload() {
+        if (mPendingReload != null) {
+            mPendingReload.cancel(false);
+            mPendingReload = null;
+        }
+        if (mReloadSignal != null) {
+            mReloadSignal.cancel();
+            mReloadSignal = null;
+        }
+    }
+
+    /**
+     * To save the changes not saved yet, in order with the loading work
+     */
+    public void flush() {
+        mExecutor.execute(mTracker::flush);
+    }
+
+    /**
+     * To load the page if it is not in the memory
+     * @param pageIndex index of the page
+     */
+    private void requestPage(int pageIndex) {
+        // Guard Code
+        if (pageIndex < 0 || pageIndex * PAGE_SIZE >= mSize) {
+            return;
+        }
+        List<Item> page = mPages.get(pageIndex);
+        if ((page != null && page.size() == expectedPageSize(pageIndex)) || !mLoadingPages.add(pageIndex)) {
+            return;
+        }
+
+        // Continuing from the last item of the previous page if it is in the memory
+        // Searched items are ranked by relevance, so they are always loaded by offset
+        List<Item> previousPage = mPages.get(pageIndex - 1);
+        Item lastItem = mQuery.searchText.isEmpty() && previousPage != null && previousPage.size() == PAGE_SIZE ?
+                previousPage.get(PAGE_SIZE - 1) : null;
+        String afterLabel = lastItem == null ? null : lastItem.label;
+        long afterPosition = lastItem == null ? 0 : lastItem.position;
+
+        int generation = mGeneration;
+        ItemQuery query = mQuery;
+
+        mExecutor.execute(() -> {
+            List<Item> items = null;
+            try {
+                mTracker.flush();
+                items = lastItem == null ?
+                        mDbHelper.fetchItems(query, pageIndex * PAGE_SIZE, PAGE_SIZE, null) :
+                        mDbHelper.fetchItemsAfter(query, afterLabel, afterPosition, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                System.err.println(e.toString());
+            }
+            List<Item> result = items;
+            mMainHandler.post(() -> onPageLoaded(pageIndex, result, generation));
+        });
+    }
+
+    /**
+     * When the page is loaded from the database
+     * @param pageIndex index of the page
+     * @param items items of the page, null if the loading failed
+     * @param generation generation when the loading was requested
+     */
+    private void onPageLoaded(int pageIndex, List<Item> items, int generation) {
+        mLoadingPages.remove(pageIndex);
+
+        // Guard Code
+        if (items == null) {
+            return;
+        }
+
+        // Items were shifted meanwhile, so load the page again
+        if (generation != mGeneration) {
+            requestPage(pageIndex);
+            return;
+        }
+
+        // Number of the items is out of date
+        if (items.size() != expectedPageSize(pageIndex)) {
+            reload();
+            return;
+        }
+
+        mPages.put(pageIndex, items);
+        mPositions = null;
+        if (mListener != null) {
+            mListener.onItemRangeLoaded(pageIndex * PAGE_SIZE, items.size());
+        }
+    }
+
+    /**
+     * When the items are loaded again
+     * @param size number of the items
+     * @param items items from the start of the list
+     * @param diff changes from the items shown before, null to refresh the whole list
+     * @param generation generation when the loading was requested
+     * @param reloadGeneration reload generation when the loading was requested
+     */
+    private void onReloaded(int size, List<Item> items, DiffUtil.DiffResult diff,
+                            int generation, int reloadGeneration) {
+        // Newer reload will give the result
+        if (reloadGeneration != mReloadGeneration) {
+            return;
+        }
+        mPendingReload = null;
+        mReloadSignal = null;
+
+        // Items were changed meanwhile, so load again
+        if (generation != mGeneration) {
+            reload();
+            return;
+        }
+
+        // Splitting the items into the pages
+        mSize = size;
+        mPages.clear();
+        mPositions = null;
+        for (int start = 0; start < items.size() && start / PAGE_SIZE < MAX_CACHED_PAGES; start += PAGE_SIZE) {
+            mPages.put(start / PAGE_SIZE, new ArrayList<>(items.subList(start, Math.min(start + PAGE_SIZE, items.size()))));
+        }
+
+        if (mListener == null) {
+            return;
+        }
+        if (diff == null) {
+            mListener.onReloaded();
+        } else {
+            mListener.onItemsChanged(diff);
+        }
+    }
+
+    /**
+     * To check whether all the items are in the memory
+     * @return true if every page is loaded
+     */
+    private boolean isFullyLoaded() {
+        int pageCount = (mSize + PAGE_SIZE - 1) / PAGE_SIZE;
+        if (pageCount > MAX_CACHED_PAGES) {
+            return false;
+        }
+
+        for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+            List<Item> page = mPages.get(pageIndex);
+            if (page == null || page.size() != expectedPageSize(pageIndex)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * To get the items of the pages in the memory in their order
+     * @return list of the items
+     */
+    private List<Item> getLoadedItems() {
+        List<Item> items = new ArrayList<>();
+        for (int pageIndex = 0; mPages.containsKey(pageIndex); pageIndex++) {
+            items.addAll(mPages.get(pageIndex));
+        }
+        return items;
+    }
+
+    /**
+     * To get the number of the items the page should have
+     * @param pageIndex index of the page
+     * @return number of the items
+     */
+    private int expectedPageSize(int pageIndex) {
+        return Math.min(PAGE_SIZE, mSize - pageIndex * PAGE_SIZE);
+    }
+
+    /**
+     * Callbacks for the changes in the loaded items
+     */
+    public interface OnChangeListener {
+        /**
+         * When the items of a page are loaded
+         * @param start position of the first item loaded
+         * @param count number of the items loaded
+         */
+        void onItemRangeLoaded(int start, int count);
+
+        /**
+         * When all the items are loaded again
+         */
+        void onReloaded();
+
+        /**
+         * When the items are replaced and the changes item by item are known
+         * @param diff changes in the items
+         */
+        void onItemsChanged(DiffUtil.DiffResult diff);
+    }
+}
@@ -0,0 +1,219 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.graphics.Bitmap;
+
+import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.label.ImageLabel;
+import com.google.mlkit.vision.label.ImageLabeler;
+import com.google.mlkit.vision.label.ImageLabeling;
+import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Helper class owning the single labeler of the app
+ * The model is loaded once and the images are labeled one at a time through a queue
+ * All the methods are to be called on the main thread, the callbacks come on it too
+ */
+public class LabelingEngine implements CacheCoordinator.TrimmableCache {
+    // Number of the images labeled at the same time, more only adds to the memory used
+    private static final int MAX_IN_FLIGHT = 1;
+    // Side of the blank image used to load the model
+    private static final int WARM_UP_SIDE = 32;
+    // Rough native memory of the loaded model and its interpreter, for the size of the cache
+    private static final long MODEL_BYTES = 6L * 1024 * 1024;
+
+    // Labeler, null until used or after it is closed
+    private ImageLabeler mLabeler;
+    // Images waiting to be labeled
+    private final Queue<Request> mQueue = new ArrayDeque<>();
+    // Number of the images being labeled
+    private int mInFlight;
+    // To close the labeler once the running work is over
+    private boolean isCloseRequested;
+
+    /**
+     * To load the model in advance so that the first image does not wait for it
+     */
+    public void warmUp() {
+        // Guard Code
+        if (mLabeler != null) {
+            return;
+        }
+
+        Bitmap blank = Bitmap.createBitmap(WARM_UP_SIDE, WARM_UP_SIDE, Bitmap.Config.ARGB_8888);
+        label(blank, new OnCompleteListener() {
+            @Override
+            public void onSuccess(List<String> labels) {
+                blank.recycle();
+            }
+
+            @Override
+            public void onError(String error) {
+                blank.recycle();
+            }
+        });
+    }
+
+    /**
+     * To label the image once the images before it are done
+     * @param bitmap image to be labeled
+     * @param listener listener to be called when work is done
+     */
+    public void label(Bitmap bitmap, OnCompleteListener listener) {
+        label(bitmap, new CancellationToken(), listener);
+    }
+
+    /**
+     * To label the image once the images before it are done, unless the request is cancelled
+     * A cancelled image leaves the queue at once with an error, the one being labeled
+     * cannot be stopped and still gives its result
+     * @param bitmap image to be labeled
+     * @param token cancellation of the request, to be cancelled on the main thread
+     * @param listener listener to be called when work is done
+     */
+    public void label(Bitmap bitmap, CancellationToken token, OnCompleteListener listener) {
+        isCloseRequested = false;
+        Request request = new Request(bitmap, token, listener);
+        mQueue.add(request);
+
+        // Removed once the image leaves the queue, the token may outlive it
+        request.cancelListener = () -> {
+            if (mQueue.remove(request)) {
+                listener.onError("Cancelled");
+                closeIfIdle();
+            }
+        };
+        token.addOnCancelListener(request.cancelListener);
+        processNext();
+    }
+
+    /**
+     * To close the labeler and free its native memory, it is loaded again on the next use
+     * Images already queued are labeled first
+     */
+    public void close() {
+        isCloseRequested = true;
+        closeIfIdle();
+    }
+
+    /**
+     * To get the memory taken by the loaded model
+     * @return estimated size in bytes, 0 if it is not loaded
+     */
+    @Override
+    public long getSizeBytes() {
+        return mLabeler != null ? MODEL_BYTES : 0;
+    }
+
+    /**
+     * To close the labeler, once the images queued are labeled
+     * @param level trim level given by the system
+     */
+    @Override
+    public void trim(int level) {
+        close();
+    }
+
+    /**
+     * To start labeling the queued images while there is room
+     */
+    private void processNext() {
+        while (mInFlight < MAX_IN_FLIGHT && !mQueue.isEmpty()) {
+            Request request = mQueue.poll();
+            request.token.removeOnCancelListener(request.cancelListener);
+            mInFlight++;
+            request.listener.onStart();
+
+            getLabeler().process(InputImage.fromBitmap(request.bitmap, 0))
+                    .addOnSuccessListener(imageLabels -> {
+                        List<String> labels = new ArrayList<>();
+                        for (ImageLabel imageLabel : imageLabels) {
+                            labels.add(imageLabel.getText());
+                        }
+                        onProcessed();
+                        request.listener.onSuccess(labels);
+                    })
+                    .addOnFailureListener(e -> {
+                        onProcessed();
+                        request.listener.onError(e.toString());
+                    });
+        }
+    }
+
+    /**
+     * To move on to the next image once one is labeled
+     */
+    private void onProcessed() {
+        mInFlight--;
+        processNext();
+        closeIfIdle();
+    }
+
+    /**
+     * To close the labeler if it is requested and nothing is running
+     */
+    private void closeIfIdle() {
+        if (isCloseRequested && mInFlight == 0 && mQueue.isEmpty() && mLabeler != null) {
+            mLabeler.close();
+            mLabeler = null;
+        }
+    }
+
+    /**
+     * To get the labeler, loading it if needed
+     * @return labeler with the default options
+     */
+    private ImageLabeler getLabeler() {
+        if (mLabeler == null) {
+            mLabeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
+        }
+        return mLabeler;
+    }
+
+    /**
+     * Represents the image waiting to be labeled
+     */
+    private static class Request {
+        // Image to be labeled
+        final Bitmap bitmap;
+        // Cancellation of the request
+        final CancellationToken token;
+        // Listener to be called when work is done
+        final OnCompleteListener listener;
+        // Takes the image out of the queue when the request is cancelled
+        Runnable cancelListener;
+
+        Request(Bitmap bitmap, CancellationToken token, OnCompleteListener listener) {
+            this.bitmap = bitmap;
+            this.token = token;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Interface for the callbacks when the labels are found
+     */
+    public interface OnCompleteListener {
+        /**
+         * when the labeler takes the image out of the queue and starts on it
+         */
+        default void onStart() {
+        }
+
+        /**
+         * when the image is labeled
+         * @param labels labels of the image
+         */
+        void onSuccess(List<String> labels);
+
+        /**
+         * when error occurred due to any specific reason
+         * @param error error which is occurred
+         */
+        void onError(String error);
+    }
+}
@@ -1,104 +1,356 @@
 package com.streamliners.galleryapp.helpers;
 
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 
-import androidx.palette.graphics.Palette;
-
-import com.google.mlkit.vision.common.InputImage;
-import com.google.mlkit.vision.label.ImageLabel;
-import com.google.mlkit.vision.label.ImageLabeler;
-import com.google.mlkit.vision.label.ImageLabeling;
-import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.streamliners.colorextractor.DominantColorExtractor;
+import com.streamliners.galleryapp.models.PicsumImage;
 
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Helper class to fetch data from the machine learning model
  */
 public class MachineLearningModelHelper {
+    // Largest side of the image analysed, palette and labeler both work on smaller images
+    // The dialogs show the image analysed, so it is decoded once for both
+    public static final int ANALYSIS_SIZE = 512;
+
+    // Default time given to each stage before its result is left out
+    private static final long DEFAULT_PALETTE_TIMEOUT_MILLIS = 2000;
+    private static final long DEFAULT_LABELS_TIMEOUT_MILLIS = 5000;
+    // Tag for the timings in the log
+    private static final String TAG = "MachineLearningModel";
+
+    // Worker of the palette stage, the extractor and the pixels are only used on it
+    private static final ExecutorService PALETTE_EXECUTOR = Executors.newSingleThreadExecutor();
+    // Extractor reused for every image, it allocates nothing per image
+    private static final DominantColorExtractor EXTRACTOR = new DominantColorExtractor();
+    // Pixels of the image being analysed, grown only for images larger than the analysis size
+    private static int[] sPixels = new int[ANALYSIS_SIZE * ANALYSIS_SIZE];
+
+    // Labeler shared by the whole app
+    private final LabelingEngine mLabelingEngine;
+    // To time out the stages, the results also come on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
     // Listener for the process
     private OnCompleteListener mListener;
+    // Cancellation of the request, no result is given once it is cancelled
+    private CancellationToken mToken;
+    // Timeouts of the stages, removed once both are over
+    private Runnable mPaletteTimeout;
+    private Runnable mLabelsTimeout;
+
+    // Time given to each stage
+    private long mPaletteTimeoutMillis = DEFAULT_PALETTE_TIMEOUT_MILLIS;
+    private long mLabelsTimeoutMillis = DEFAULT_LABELS_TIMEOUT_MILLIS;
 
-    // set of major color in the image
+    // set of major color in the image, null until the palette is done
     private Set<Integer> mColors;
-    // list of label of the image
-    private final List<String> mLabels = new ArrayList<>();
+    // list of label of the image, null until the labeler is done
+    private List<String> mLabels;
+    // To check whether each stage is over, successfully or not
+    private boolean isPaletteDone;
+    private boolean isLabelsDone;
+    // To check whether each stage stopped reading the image, a timed out stage may still read it
+    private boolean isPaletteReturned;
+    private boolean isLabelsReturned;
+    // Time at which the labeler started on the image, the wait in its queue is not counted
+    private long mLabelsStartTime;
+    // Time taken by each stage, -1 if it failed or timed out
+    private long mPaletteMillis = -1;
+    private long mLabelsMillis = -1;
+
+    /**
+     * To initialize the helper with...
+     * @param labelingEngine labeler shared by the whole app
+     */
+    public MachineLearningModelHelper(LabelingEngine labelingEngine) {
+        this.mLabelingEngine = labelingEngine;
+    }
 
     /**
-     * To get the data
+     * To load the image at the size of the analysis instead of its full size
+     * The image is subsampled while decoding so the full size is never in the memory
+     * @param context context of the activity
+     * @param url url of the image
+     * @return request giving the image to be analysed
+     */
+    public static RequestBuilder<Bitmap> loadForAnalysis(Context context, String url) {
+        return Glide.with(context)
+                .asBitmap()
+                .load(url)
+                .override(ANALYSIS_SIZE)
+                .downsample(DownsampleStrategy.AT_MOST)
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                // Palette and the hash read the pixels, which hardware bitmaps do not allow
+                .disallowHardwareConfig();
+    }
+
+    /**
+     * To load the random image at the size of the analysis, resolving its redirect on the way
+     * @param context context of the activity
+     * @param image random image to be loaded
+     * @return request giving the image to be analysed
+     */
+    public static RequestBuilder<Bitmap> loadForAnalysis(Context context, PicsumImage image) {
+        return Glide.with(context)
+                .asBitmap()
+                .load(image)
+                .diskCacheStrategy(PicsumModelLoader.DISK_CACHE_STRATEGY)
+                .override(ANALYSIS_SIZE)
+                .downsample(DownsampleStrategy.AT_MOST)
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .disallowHardwareConfig();
+    }
+
+    /**
+     * To set the time given to each stage, a stage taking longer is left out of the result
+     * @param paletteTimeoutMillis time for the colors
+     * @param labelsTimeoutMillis time for the labels
+     * @return this helper
+     */
+    public MachineLearningModelHelper setTimeouts(long paletteTimeoutMillis, long labelsTimeoutMillis) {
+        this.mPaletteTimeoutMillis = paletteTimeoutMillis;
+        this.mLabelsTimeoutMillis = labelsTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * To get the data, the colors and the labels are found at the same time
      * @param bitmap Image in bitmap format (We need bitmap image for our machine learning model for colors and labels)
      * @param listener listener to be called when work is done
      */
     public void getData(Bitmap bitmap, OnCompleteListener listener) {
+        getData(bitmap, new CancellationToken(), listener);
+    }
+
+    /**
+     * To get the data unless the request is cancelled
+     * Stages not started yet are skipped once it is cancelled and no result is given,
+     * only the release of the image
+     * @param bitmap Image in bitmap format (We need bitmap image for our machine learning model for colors and labels)
+     * @param token cancellation of the request, to be cancelled on the main thread
+     * @param listener listener to be called when work is done
+     */
+    public void getData(Bitmap bitmap, CancellationToken token, OnCompleteListener listener) {
         this.mListener = listener;
+        this.mToken = token;
+
+        long startTime = SystemClock.elapsedRealtime();
+
+        // Stages still running after their time are left out,
+        // the time of the labels starts once the labeler takes the image
+        mPaletteTimeout = () -> onPaletteDone(null, startTime);
+        mLabelsTimeout = () -> onLabelsDone(null);
+        mMainHandler.postDelayed(mPaletteTimeout, mPaletteTimeoutMillis);
 
-        extractPaletteFromBitmap(bitmap);
+        extractPaletteFromBitmap(bitmap, startTime);
+        getLabelsFromImage(bitmap);
     }
 
     /**
-     * To extract palette from the bitmap
+     * To check whether both the stages gave their result
+     * @return false if any stage failed or timed out
      */
-    private void extractPaletteFromBitmap(Bitmap bitmap) {
-        Palette.from(bitmap).generate(palette -> {
-            if (palette == null) {
-                mListener.onError("Color palette is null");
-                return;
-            }
+    public boolean isComplete() {
+        return mPaletteMillis >= 0 && mLabelsMillis >= 0;
+    }
+
+    /**
+     * To get the time taken by the palette
+     * @return time in milliseconds, -1 if it failed or timed out
+     */
+    public long getPaletteMillis() {
+        return mPaletteMillis;
+    }
 
-            // set the colors set with the filtered colors
-            mColors = getColorFromPalette(palette);
+    /**
+     * To get the time taken by the labeler
+     * @return time in milliseconds, -1 if it failed or timed out
+     */
+    public long getLabelsMillis() {
+        return mLabelsMillis;
+    }
 
-            // to get labels for the image
-            getLabelsFromImage(bitmap);
+    /**
+     * To extract palette from the bitmap, on the palette's own worker
+     */
+    private void extractPaletteFromBitmap(Bitmap bitmap, long startTime) {
+        PALETTE_EXECUTOR.execute(() -> {
+            Set<Integer> colors = null;
+            try {
+                // Images cancelled while waiting for the worker are skipped
+                if (!mToken.isCancelled()) {
+                    colors = extractColors(bitmap);
+                }
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+
+            Set<Integer> result = colors;
+            mMainHandler.post(() -> {
+                onPaletteDone(result, startTime);
+                isPaletteReturned = true;
+                releaseIfReturned();
+            });
         });
     }
 
     /**
-     * To get the labels from the given image
+     * To find the major colors of the image, on the palette's worker
+     * @param bitmap image to be read
+     * @return set of the major colors
+     */
+    private Set<Integer> extractColors(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (sPixels.length < width * height) {
+            sPixels = new int[width * height];
+        }
+        bitmap.getPixels(sPixels, 0, width, 0, 0, width, height);
+
+        int[] swatches = new int[DominantColorExtractor.CATEGORY_COUNT];
+        EXTRACTOR.extract(sPixels, 0, width * height, swatches);
+
+        // set the colors set with the filtered colors
+        return getColorFromSwatches(swatches);
+    }
+
+    /**
+     * To get the labels from the given image, on the labeler's own worker
      */
     private void getLabelsFromImage(Bitmap bitmap) {
-        // creating object
-        InputImage image = InputImage.fromBitmap(bitmap, 0);
+        // to process the image with the shared model
+        mLabelingEngine.label(bitmap, mToken, new LabelingEngine.OnCompleteListener() {
+            @Override
+            public void onStart() {
+                mLabelsStartTime = SystemClock.elapsedRealtime();
+                mMainHandler.postDelayed(mLabelsTimeout, mLabelsTimeoutMillis);
+            }
 
-        // To use default options:
-        ImageLabeler labeler = ImageLabeling.getClient(ImageLabelerOptions.DEFAULT_OPTIONS);
+            @Override
+            public void onSuccess(List<String> labels) {
+                onLabelsDone(labels);
+                isLabelsReturned = true;
+                releaseIfReturned();
+            }
 
-        // to process the image with our model
-        labeler.process(image)
-                .addOnSuccessListener(imageLabels -> {
-                    for (ImageLabel imageLabel : imageLabels) {
-                        mLabels.add(imageLabel.getText());
-                    }
+            @Override
+            public void onError(String error) {
+                System.err.println(error);
+                onLabelsDone(null);
+                isLabelsReturned = true;
+                releaseIfReturned();
+            }
+        });
+    }
 
-                    // callback when all the data is fetched
-                    mListener.onSuccess(mColors, mLabels);
-                })
-                .addOnFailureListener(e -> {
-                    // giving callback for the error
-                    mListener.onError(e.toString());
-                });
+    /**
+     * To note the end of the palette stage, only its first end counts
+     * @param colors colors found, null if the stage failed or timed out
+     * @param startTime time at which the analysis started
+     */
+    private void onPaletteDone(Set<Integer> colors, long startTime) {
+        // Guard Code
+        if (isPaletteDone) {
+            return;
+        }
+
+        isPaletteDone = true;
+        mColors = colors;
+        if (colors != null) {
+            mPaletteMillis = SystemClock.elapsedRealtime() - startTime;
+        }
+        joinResults();
     }
 
     /**
-     * To get the colors from the palette
-     * @param palette palette from which the colors have to be extracted
+     * To note the end of the labels stage, only its first end counts
+     * @param labels labels found, null if the stage failed or timed out
+     */
+    private void onLabelsDone(List<String> labels) {
+        // Guard Code
+        if (isLabelsDone) {
+            return;
+        }
+
+        isLabelsDone = true;
+        mLabels = labels;
+        if (labels != null) {
+            mLabelsMillis = SystemClock.elapsedRealtime() - mLabelsStartTime;
+        }
+        joinResults();
+    }
+
+    /**
+     * To give the callback once both the stages are over
+     * A missing stage gives the partial result, both missing give the error
+     */
+    private void joinResults() {
+        // Guard Code
+        if (!isPaletteDone || !isLabelsDone) {
+            return;
+        }
+
+        // Timeouts of the finished stages are not needed anymore
+        mMainHandler.removeCallbacks(mPaletteTimeout);
+        mMainHandler.removeCallbacks(mLabelsTimeout);
+        Log.d(TAG, "Palette: " + mPaletteMillis + " ms, labels: " + mLabelsMillis + " ms");
+
+        // Guard Code
+        if (mToken.isCancelled()) {
+            return;
+        }
+
+        if (mColors == null && mLabels == null) {
+            mListener.onError("Image analysis failed");
+            return;
+        }
+
+        // Without the palette the default color is given, as when the image has no colors
+        Set<Integer> colors = mColors;
+        if (colors == null) {
+            colors = new HashSet<>();
+            colors.add(0);
+        }
+        mListener.onSuccess(colors, mLabels != null ? mLabels : new ArrayList<>());
+    }
+
+    /**
+     * To tell that the image may be released once no stage reads it anymore
+     */
+    private void releaseIfReturned() {
+        if (isPaletteReturned && isLabelsReturned) {
+            mListener.onBitmapReleased();
+        }
+    }
+
+    /**
+     * To get the colors from the swatches of the palette
+     * @param swatches colors of the swatch categories, 0 for the missing ones
      * @return  set of all the colors extracted from the palette
      */
-    private Set<Integer> getColorFromPalette(Palette palette) {
+    private Set<Integer> getColorFromSwatches(int[] swatches) {
         Set<Integer> colors = new HashSet<>();
 
-        // adding the vibrant colors and default color is black
-        colors.add(palette.getVibrantColor(0));
-        colors.add(palette.getLightVibrantColor(0));
-        colors.add(palette.getDarkVibrantColor(0));
-
-        // adding the muted colors and default color is black
-        colors.add(palette.getMutedColor(0));
-        colors.add(palette.getLightMutedColor(0));
-        colors.add(palette.getDarkMutedColor(0));
+        // adding the vibrant and the muted colors, missing ones are black
+        for (int swatch : swatches) {
+            colors.add(swatch);
+        }
 
         // removing the black color
         colors.remove(0);
@@ -123,6 +375,13 @@ public class MachineLearningModelHelper {
          */
         void onSuccess(Set<Integer> colors, List<String> labels);
 
+        /**
+         * when no stage reads the image anymore, it may be given back then
+         * Comes after the result, or alone if the request is cancelled
+         */
+        default void onBitmapReleased() {
+        }
+
         /**
          * when error occurred due to any specific reason
          * @param error error which is occurred
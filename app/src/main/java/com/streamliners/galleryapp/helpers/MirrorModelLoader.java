@@ -0,0 +1,181 @@
+package com.streamliners.galleryapp.helpers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Glide loader reading the network images through the image mirror
+ * The original is read from the device when it is stored, otherwise it is downloaded into
+ * the mirror and read from there, so every network load of the app fills the mirror
+ */
+public class MirrorModelLoader implements ModelLoader<GlideUrl, InputStream> {
+    // Loader downloading the urls
+    private final ModelLoader<GlideUrl, InputStream> mUrlLoader;
+    // Store of the originals
+    private final ImageMirrorStore mStore;
+
+    /**
+     * To initialize the loader with...
+     * @param urlLoader loader downloading the urls
+     * @param store store of the originals
+     */
+    MirrorModelLoader(ModelLoader<GlideUrl, InputStream> urlLoader, ImageMirrorStore store) {
+        this.mUrlLoader = urlLoader;
+        this.mStore = store;
+    }
+
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull GlideUrl model, int width, int height, @NonNull Options options) {
+        LoadData<InputStream> download = mUrlLoader.buildLoadData(model, width, height, options);
+
+        // Guard Code
+        if (download == null) {
+            return null;
+        }
+
+        // Same keys as the download, so the caches of Glide stay valid
+        return new LoadData<>(download.sourceKey, download.alternateKeys,
+                new MirrorFetcher(model.toStringUrl(), download.fetcher, mStore));
+    }
+
+    @Override
+    public boolean handles(@NonNull GlideUrl model) {
+        return model.toStringUrl().startsWith("http");
+    }
+
+    /**
+     * Fetcher reading the original from the mirror, downloading it first if needed
+     */
+    private static class MirrorFetcher implements DataFetcher<InputStream> {
+        // Url of the image
+        private final String mUrl;
+        // Fetcher downloading the url
+        private final DataFetcher<InputStream> mDownloadFetcher;
+        // Store of the originals
+        private final ImageMirrorStore mStore;
+        // Stream of the original given to Glide
+        private InputStream mStream;
+
+        MirrorFetcher(String url, DataFetcher<InputStream> downloadFetcher, ImageMirrorStore store) {
+            this.mUrl = url;
+            this.mDownloadFetcher = downloadFetcher;
+            this.mStore = store;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            File file = mStore.find(mUrl);
+            if (file != null) {
+                try {
+                    mStream = new FileInputStream(file);
+                    callback.onDataReady(mStream);
+                    return;
+                } catch (FileNotFoundException e) {
+                    // Evicted meanwhile, downloaded again
+                }
+            }
+
+            mDownloadFetcher.loadData(priority, new DataCallback<InputStream>() {
+                @Override
+                public void onDataReady(@Nullable InputStream data) {
+                    // Guard Code
+                    if (data == null) {
+                        callback.onDataReady(null);
+                        return;
+                    }
+
+                    try {
+                        mStream = new FileInputStream(mStore.save(mUrl, data));
+                    } catch (IOException e) {
+                        callback.onLoadFailed(e);
+                        return;
+                    }
+                    callback.onDataReady(mStream);
+                }
+
+                @Override
+                public void onLoadFailed(@NonNull Exception e) {
+                    callback.onLoadFailed(e);
+                }
+            });
+        }
+
+        @Override
+        public void cleanup() {
+            if (mStream != null) {
+                try {
+                    mStream.close();
+                } catch (IOException e) {
+                    System.err.println(e.toString());
+                }
+            }
+            mDownloadFetcher.cleanup();
+        }
+
+        @Override
+        public void cancel() {
+            mDownloadFetcher.cancel();
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        /**
+         * The data is always read from the mirror, so Glide does not keep a second copy of it
+         */
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+    /**
+     * Factory registered in the Glide module
+     */
+    public static class Factory implements ModelLoaderFactory<GlideUrl, InputStream> {
+        // Store of the originals
+        private final ImageMirrorStore mStore;
+
+        /**
+         * To initialize the factory with...
+         * @param store store of the originals, shared by the app
+         */
+        public Factory(ImageMirrorStore store) {
+            this.mStore = store;
+        }
+
+        /**
+         * The loaders registered after this one download the urls, this one is skipped
+         * by Glide while it is being built
+         */
+        @NonNull
+        @Override
+        public ModelLoader<GlideUrl, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new MirrorModelLoader(multiFactory.build(GlideUrl.class, InputStream.class), mStore);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.streamliners.galleryapp.helpers;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.EncodeStrategy;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.model.GlideUrl;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+import com.streamliners.galleryapp.models.PicsumImage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Glide loader for the random images of picsum
+ * The redirect is resolved and the image downloaded on Glide's source workers in one go,
+ * and the data is cached under the resolved url, the one the items keep
+ */
+public class PicsumModelLoader implements ModelLoader<PicsumImage, InputStream> {
+    /**
+     * Cache strategy for the random images
+     * A random image is never in the cache, so the cache is not read and the work starts
+     * straight on the source workers, the downloaded data is kept by the image mirror
+     */
+    public static final DiskCacheStrategy DISK_CACHE_STRATEGY = new DiskCacheStrategy() {
+        @Override
+        public boolean isDataCacheable(DataSource dataSource) {
+            return dataSource == DataSource.REMOTE;
+        }
+
+        @Override
+        public boolean isResourceCacheable(boolean isFromAlternateCacheKey, DataSource dataSource, EncodeStrategy encodeStrategy) {
+            return false;
+        }
+
+        @Override
+        public boolean decodeCachedResource() {
+            return false;
+        }
+
+        @Override
+        public boolean decodeCachedData() {
+            return false;
+        }
+    };
+
+    // Loader downloading the resolved urls
+    private final ModelLoader<GlideUrl, InputStream> mUrlLoader;
+    // Client resolving the redirects
+    private final RedirectedUrlHelper mRedirectedUrlHelper;
+
+    /**
+     * To initialize the loader with...
+     * @param urlLoader loader downloading the resolved urls
+     * @param redirectedUrlHelper client resolving the redirects
+     */
+    PicsumModelLoader(ModelLoader<GlideUrl, InputStream> urlLoader, RedirectedUrlHelper redirectedUrlHelper) {
+        this.mUrlLoader = urlLoader;
+        this.mRedirectedUrlHelper = redirectedUrlHelper;
+    }
+
+    /**
+     * To resolve the redirect and give the download of the image it points to
+     * Called by Glide on its source worker, as the cache is never read for these images
+     */
+    @Nullable
+    @Override
+    public LoadData<InputStream> buildLoadData(@NonNull PicsumImage model, int width, int height, @NonNull Options options) {
+        String resolvedUrl;
+        try {
+            resolvedUrl = mRedirectedUrlHelper.getRedirectUrl(model.sourceUrl, model.token);
+        } catch (IOException e) {
+            return new LoadData<>(new ObjectKey(model), new FailedFetcher(e));
+        }
+
+        model.setResolvedUrl(resolvedUrl);
+        return mUrlLoader.buildLoadData(new GlideUrl(resolvedUrl), width, height, options);
+    }
+
+    @Override
+    public boolean handles(@NonNull PicsumImage model) {
+        return true;
+    }
+
+    /**
+     * Fetcher giving the error of the redirect to Glide
+     */
+    private static class FailedFetcher implements DataFetcher<InputStream> {
+        // Error occurred while resolving
+        private final IOException mError;
+
+        FailedFetcher(IOException error) {
+            this.mError = error;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super InputStream> callback) {
+            callback.onLoadFailed(mError);
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @NonNull
+        @Override
+        public Class<InputStream> getDataClass() {
+            return InputStream.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+
+    /**
+     * Factory registered in the Glide module
+     */
+    public static class Factory implements ModelLoaderFactory<PicsumImage, InputStream> {
+        // Client resolving the redirects
+        private final RedirectedUrlHelper mRedirectedUrlHelper;
+
+        /**
+         * To initialize the factory with...
+         * @param redirectedUrlHelper client resolving the redirects, shared by the app
+         */
+        public Factory(RedirectedUrlHelper redirectedUrlHelper) {
+            this.mRedirectedUrlHelper = redirectedUrlHelper;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<PicsumImage, InputStream> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new PicsumModelLoader(multiFactory.build(GlideUrl.class, InputStream.class), mRedirectedUrlHelper);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -1,92 +1,335 @@
 package com.streamliners.galleryapp.helpers;
 
-import android.os.AsyncTask;
-
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Represents class for redirected URL(s)
+ * One object is shared by the app so that its connections and resolved URLs are reused
+ * Resolving blocks, so it is to be called on a background thread
  */
-public class RedirectedUrlHelper extends AsyncTask<String, Void, String> {
-    // Listener for the process
-    private OnCompleteListener mListener;
+public class RedirectedUrlHelper implements CacheCoordinator.TrimmableCache {
+    // Default limits of the requests
+    private static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10_000;
+    private static final int DEFAULT_READ_TIMEOUT_MILLIS = 10_000;
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final long DEFAULT_BACKOFF_MILLIS = 250;
+    private static final int DEFAULT_CACHE_SIZE = 100;
+    // Rough memory of a resolved URL kept besides its characters, for the size of the cache
+    private static final int CACHE_ENTRY_BYTES = 96;
+
+    // Time to connect and to wait for the response
+    private final int mConnectTimeoutMillis;
+    private final int mReadTimeoutMillis;
+    // Number of the attempts after the first one failed
+    private final int mMaxRetries;
+    // Wait before the first retry, doubled for every next one
+    private final long mBackoffMillis;
+
+    // Resolved URLs which may be reused, least recently used ones are evicted
+    private final Map<String, CachedRedirect> mCache;
 
     /**
-     * To fetch the redirected URL
-     * @param listener listener for the callbacks
-     * @return same object
+     * To construct the helper with the default limits
      */
-    public RedirectedUrlHelper fetchRedirectedURL(OnCompleteListener listener) {
-        mListener = listener;
-        return this;
+    public RedirectedUrlHelper() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS,
+                DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF_MILLIS, DEFAULT_CACHE_SIZE);
     }
 
-    // AsyncTask overridden methods
-
-    @Override
-    protected String doInBackground(String... strings) {
-        return getRedirectUrl(strings[0]);
+    /**
+     * To construct the helper with...
+     * @param connectTimeoutMillis time to connect to the server
+     * @param readTimeoutMillis time to wait for the response
+     * @param maxRetries number of the attempts after the first one failed
+     * @param backoffMillis wait before the first retry, doubled for every next one
+     * @param cacheSize number of the resolved URLs kept
+     */
+    public RedirectedUrlHelper(int connectTimeoutMillis, int readTimeoutMillis,
+                               int maxRetries, long backoffMillis, int cacheSize) {
+        this.mConnectTimeoutMillis = connectTimeoutMillis;
+        this.mReadTimeoutMillis = readTimeoutMillis;
+        this.mMaxRetries = maxRetries;
+        this.mBackoffMillis = backoffMillis;
+        this.mCache = new LinkedHashMap<String, CachedRedirect>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRedirect> eldest) {
+                return size() > cacheSize;
+            }
+        };
     }
 
-    @Override
-    protected void onPostExecute(String s) {
-        mListener.onFetched(s);
+    /**
+     * To get the redirected URL for the specified URL
+     * Failed attempts and server errors are retried with a growing wait
+     * @param url specific URL for which the redirected URL is to be get
+     * @return the redirected URL, same URL if it is not redirected
+     * @throws IOException if the server could not be reached after all the attempts
+     */
+    public String getRedirectUrl(String url) throws IOException {
+        return getRedirectUrl(url, new CancellationToken());
     }
 
-    // Utility methods
-
     /**
-     * To get the redirected URL for the specified URL
+     * To get the redirected URL for the specified URL unless the request is cancelled
+     * No attempt starts after the cancellation and the wait before a retry ends with it
      * @param url specific URL for which the redirected URL is to be get
-     * @return the redirected URL
+     * @param token cancellation of the request
+     * @return the redirected URL, same URL if it is not redirected
+     * @throws IOException if the server could not be reached after all the attempts
+     * @throws InterruptedIOException if the request is cancelled
      */
-    private String getRedirectUrl(String url) {
-        URL urlTmp;
-        String redUrl;
-        HttpURLConnection connection = null;
+    public String getRedirectUrl(String url, CancellationToken token) throws IOException {
+        String cachedUrl = getCached(url);
+        if (cachedUrl != null) {
+            return cachedUrl;
+        }
 
+        IOException error = null;
+        for (int attempt = 0; attempt <= mMaxRetries; attempt++) {
+            if (attempt > 0) {
+                waitBeforeRetry(attempt, token);
+            }
+
+            // Guard Code
+            if (token.isCancelled()) {
+                throw new InterruptedIOException("Cancelled");
+            }
+
+            try {
+                return fetchRedirectUrl(url);
+            } catch (MalformedURLException e) {
+                // Retrying does not help when the url itself is wrong
+                throw e;
+            } catch (IOException e) {
+                // Timed out, unreachable or server error, the server may answer the next time
+                error = e;
+            }
+        }
+        throw error;
+    }
+
+    /**
+     * To ask the server once where the URL redirects to
+     * @param url URL to be resolved
+     * @return the redirected URL, same URL if it is not redirected
+     * @throws IOException if the request fails or the server gives an error
+     */
+    private String fetchRedirectUrl(String url) throws IOException {
+        HttpURLConnection connection = openConnection(url, "HEAD");
         try {
-            urlTmp = new URL(url);
-        } catch (MalformedURLException malformedURLException) {
-            return url;
+            int responseCode = connection.getResponseCode();
+
+            // Servers not allowing HEAD are asked again with GET
+            if (responseCode == HttpURLConnection.HTTP_BAD_METHOD) {
+                // Out of the finally first, so it is not released twice if the GET fails to open
+                HttpURLConnection headConnection = connection;
+                connection = null;
+                releaseConnection(headConnection);
+                connection = openConnection(url, "GET");
+                responseCode = connection.getResponseCode();
+            }
+
+            if (responseCode >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                throw new ServerException(responseCode);
+            }
+
+            String redUrl = connection.getHeaderField("location");
+            if (redUrl == null) {
+                return url;
+            }
+
+            // Relative locations are resolved against the requested URL
+            redUrl = new URL(new URL(url), redUrl).toString();
+            putCached(url, redUrl, responseCode, connection.getHeaderField("Cache-Control"));
+            return redUrl;
+        } finally {
+            if (connection != null) {
+                releaseConnection(connection);
+            }
         }
+    }
+
+    /**
+     * To open the connection which does not follow the redirects
+     * @param url URL to be requested
+     * @param method HTTP method of the request
+     * @return connection not yet connected
+     * @throws IOException if the connection could not be opened
+     */
+    private HttpURLConnection openConnection(String url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod(method);
+        // To unfollow the redirection link
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(mConnectTimeoutMillis);
+        connection.setReadTimeout(mReadTimeoutMillis);
+        connection.setUseCaches(false);
+        return connection;
+    }
 
+    /**
+     * To give the connection back to the pool for the next request to the same server
+     * The body is read to its end and closed, disconnecting would close the socket
+     * A GET which was not redirected is disconnected instead, its body is the whole image
+     * @param connection connection whose response is over, or whose request failed
+     */
+    private void releaseConnection(HttpURLConnection connection) {
         try {
-            connection = (HttpURLConnection) urlTmp.openConnection();
-            // To unfollow the redirection link
-            connection.setInstanceFollowRedirects(false);
-        } catch (IOException ioException) {
-            mListener.onError(ioException.toString());
+            int responseCode = connection.getResponseCode();
+            boolean isRedirect = responseCode >= HttpURLConnection.HTTP_MULT_CHOICE
+                    && responseCode < HttpURLConnection.HTTP_BAD_REQUEST;
+            if ("GET".equals(connection.getRequestMethod()) && !isRedirect) {
+                connection.disconnect();
+                return;
+            }
+
+            InputStream stream = responseCode >= HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getErrorStream() : connection.getInputStream();
+            if (stream != null) {
+                byte[] buffer = new byte[1024];
+                while (stream.read(buffer) != -1) {
+                    // Draining the body
+                }
+                stream.close();
+            }
+        } catch (IOException e) {
+            // Connection cannot be reused, it is closed instead
+            connection.disconnect();
         }
+    }
+
+    /**
+     * To wait before the next attempt, twice as long as the previous wait
+     * @param attempt number of the attempt, from 1
+     * @param token cancellation of the request, ending the wait early
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    private void waitBeforeRetry(int attempt, CancellationToken token) throws InterruptedIOException {
         try {
-            assert connection != null;
-            connection.getResponseCode();
-        } catch (IOException ioException) {
-            mListener.onError(ioException.toString());
+            token.await(mBackoffMillis << (attempt - 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    // Cache methods
+
+    /**
+     * To get the memory taken by the resolved URLs kept
+     * @return estimated size in bytes
+     */
+    @Override
+    public synchronized long getSizeBytes() {
+        long size = 0;
+        for (Map.Entry<String, CachedRedirect> entry : mCache.entrySet()) {
+            // Two bytes for every character of the URLs
+            size += CACHE_ENTRY_BYTES + 2L * (entry.getKey().length() + entry.getValue().url.length());
+        }
+        return size;
+    }
+
+    /**
+     * To forget the resolved URLs, they are asked to the server again
+     * @param level trim level given by the system
+     */
+    @Override
+    public synchronized void trim(int level) {
+        mCache.clear();
+    }
+
+    /**
+     * To get the resolved URL kept for the URL if it is still fresh
+     * @param url URL to be resolved
+     * @return resolved URL, null if it is to be asked to the server
+     */
+    private synchronized String getCached(String url) {
+        CachedRedirect redirect = mCache.get(url);
+        if (redirect == null) {
+            return null;
         }
+        if (redirect.expiryTime < System.currentTimeMillis()) {
+            mCache.remove(url);
+            return null;
+        }
+        return redirect.url;
+    }
+
+    /**
+     * To keep the resolved URL if the server allows it to be reused
+     * Permanent redirects are kept, others only for their max age, so random images stay random
+     * @param url URL requested
+     * @param redUrl URL it redirects to
+     * @param responseCode status code of the response
+     * @param cacheControl cache control header of the response, may be null
+     */
+    private synchronized void putCached(String url, String redUrl, int responseCode, String cacheControl) {
+        long maxAgeMillis = getMaxAgeMillis(responseCode, cacheControl);
+        if (maxAgeMillis > 0) {
+            long expiryTime = maxAgeMillis == Long.MAX_VALUE
+                    ? Long.MAX_VALUE : System.currentTimeMillis() + maxAgeMillis;
+            mCache.put(url, new CachedRedirect(redUrl, expiryTime));
+        }
+    }
+
+    /**
+     * To find for how long the redirect may be reused
+     * @param responseCode status code of the response
+     * @param cacheControl cache control header of the response, may be null
+     * @return time in milliseconds, 0 if it may not be reused, Long.MAX_VALUE for ever
+     */
+    static long getMaxAgeMillis(int responseCode, String cacheControl) {
+        if (cacheControl != null) {
+            String value = cacheControl.toLowerCase(Locale.ROOT);
+            if (value.contains("no-store") || value.contains("no-cache")) {
+                return 0;
+            }
 
-        redUrl = connection.getHeaderField("location");
-        connection.disconnect();
+            for (String directive : value.split(",")) {
+                directive = directive.trim();
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        return Long.parseLong(directive.substring("max-age=".length())) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
 
-        return redUrl;
+        boolean isPermanent = responseCode == HttpURLConnection.HTTP_MOVED_PERM || responseCode == 308;
+        return isPermanent ? Long.MAX_VALUE : 0;
     }
 
     /**
-     * For the callback
+     * Represents the resolved URL kept in the cache
      */
-    public interface OnCompleteListener {
-        /**
-         * when the redirected URL is fetched successfully
-         * @param redirectedUrl the redirected url
-         */
-        void onFetched(String redirectedUrl);
-
-        /**
-         * When error occurred
-         */
-        void onError(String error);
+    private static class CachedRedirect {
+        // URL redirected to
+        final String url;
+        // Time after which it is to be asked again
+        final long expiryTime;
+
+        CachedRedirect(String url, long expiryTime) {
+            this.url = url;
+            this.expiryTime = expiryTime;
+        }
+    }
+
+    /**
+     * Error given by the server, worth retrying
+     */
+    private static class ServerException extends IOException {
+        ServerException(int responseCode) {
+            super("Server error " + responseCode);
+        }
     }
 }
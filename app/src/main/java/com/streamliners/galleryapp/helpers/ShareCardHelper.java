@@ -0,0 +1,319 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.RectF;
+import android.graphics.Typeface;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import androidx.core.content.FileProvider;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.target.Target;
+import com.streamliners.galleryapp.models.Item;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Helper class to make the images of the cards to be shared
+ * A card is drawn in the background at the width asked, not taken from the screen, and kept
+ * under the hash of its content, so sharing the same card again reuses the file made before
+ */
+public class ShareCardHelper {
+    // Default width of the shared cards
+    public static final int DEFAULT_WIDTH = 1080;
+    // Default format and quality of the shared cards
+    public static final Bitmap.CompressFormat DEFAULT_FORMAT = Bitmap.CompressFormat.JPEG;
+    public static final int DEFAULT_QUALITY = 90;
+
+    // Folder of the cards in the cache of the app, shared through the file provider
+    private static final String DIRECTORY_NAME = "shared_cards";
+    // Suffix of the authority of the file provider
+    private static final String AUTHORITY_SUFFIX = ".fileprovider";
+    // Number of the cards kept, the least recently shared go first
+    private static final int MAX_FILES = 20;
+    // Sizes in the card relative to its width, as the card in the list looks
+    private static final float TEXT_SIZE_RATIO = 0.055f;
+    private static final float PADDING_RATIO = 0.025f;
+    private static final float CORNER_RATIO = 0.05f;
+
+    // Application context for the loads
+    private final Context mContext;
+    // Folder of the cards
+    private final File mDirectory;
+    // Width of the cards
+    private final int mWidth;
+    // Format and quality of the cards
+    private final Bitmap.CompressFormat mFormat;
+    private final int mQuality;
+    // Worker drawing the cards, one at a time so the same card is never drawn twice at once
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    // To give the results on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * To construct the helper with the default width, format and quality
+     * @param context context of the app
+     */
+    public ShareCardHelper(Context context) {
+        this(context, DEFAULT_WIDTH, DEFAULT_FORMAT, DEFAULT_QUALITY);
+    }
+
+    /**
+     * To construct the helper with...
+     * @param context context of the app
+     * @param width width of the cards in pixels
+     * @param format format of the cards
+     * @param quality quality of the cards from 0 to 100, lossless formats ignore it
+     */
+    public ShareCardHelper(Context context, int width, Bitmap.CompressFormat format, int quality) {
+        this.mContext = context.getApplicationContext();
+        this.mDirectory = new File(mContext.getCacheDir(), DIRECTORY_NAME);
+        this.mWidth = width;
+        this.mFormat = format;
+        this.mQuality = quality;
+    }
+
+    /**
+     * To get the card of the item to be shared, drawing it in the background if it is not kept
+     * Called on the main thread
+     * @param item item whose card is to be shared
+     * @param listener listener called on the main thread
+     */
+    public void getCard(Item item, OnCompleteListener listener) {
+        // Copy of the item, it may be edited while the card is drawn
+        Item card = new Item(item.url, item.color, item.label);
+
+        mExecutor.execute(() -> {
+            Uri uri = null;
+            try {
+                uri = FileProvider.getUriForFile(mContext,
+                        mContext.getPackageName() + AUTHORITY_SUFFIX, findOrMake(card));
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+
+            Uri result = uri;
+            mMainHandler.post(() -> {
+                if (result != null) {
+                    listener.onSuccess(result, getMimeType());
+                } else {
+                    listener.onError("Card could not be made");
+                }
+            });
+        });
+    }
+
+    /**
+     * To find the card kept for the content of the item, making it if there is none
+     * @param item item whose card is to be found
+     * @return file of the card
+     * @throws Exception if the card could not be made
+     */
+    private File findOrMake(Item item) throws Exception {
+        File file = new File(mDirectory, fileName(item));
+
+        // Same card shared before, kept as the most recent
+        if (file.isFile()) {
+            file.setLastModified(System.currentTimeMillis());
+            return file;
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+
+        // Written under a temporary name, so a card half written is never shared
+        File temp = File.createTempFile("card-", null, mDirectory);
+        try {
+            Bitmap card = draw(item);
+            try (OutputStream outputStream = new FileOutputStream(temp)) {
+                card.compress(mFormat, mQuality, outputStream);
+            } finally {
+                card.recycle();
+            }
+
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot store " + file);
+            }
+        } finally {
+            temp.delete();
+        }
+
+        prune();
+        return file;
+    }
+
+    /**
+     * To draw the card of the item, its image above its label in its color
+     * @param item item whose card is to be drawn
+     * @return card at the width of the helper
+     * @throws Exception if the image could not be loaded
+     */
+    private Bitmap draw(Item item) throws Exception {
+        // Drawn on a canvas in the memory, which hardware bitmaps do not allow
+        FutureTarget<Bitmap> future = Glide.with(mContext)
+                .asBitmap()
+                .load(item.url)
+                .override(mWidth, Target.SIZE_ORIGINAL)
+                .downsample(DownsampleStrategy.CENTER_INSIDE)
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .disallowHardwareConfig()
+                .submit();
+
+        try {
+            Bitmap image = future.get();
+            float padding = mWidth * PADDING_RATIO;
+            float corner = mWidth * CORNER_RATIO;
+
+            // Label as the card in the list, centered in white
+            TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            textPaint.setColor(Color.WHITE);
+            textPaint.setTextSize(mWidth * TEXT_SIZE_RATIO);
+            textPaint.setTypeface(Typeface.create("sans-serif-medium", Typeface.NORMAL));
+            textPaint.setTextAlign(Paint.Align.CENTER);
+            Paint.FontMetrics metrics = textPaint.getFontMetrics();
+
+            // Images narrower than the card are scaled up to its width
+            int imageHeight = Math.round((float) mWidth * image.getHeight() / image.getWidth());
+            int height = imageHeight + Math.round(metrics.descent - metrics.ascent + 2 * padding);
+            RectF bounds = new RectF(0, 0, mWidth, height);
+
+            Bitmap card = Bitmap.createBitmap(mWidth, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(card);
+
+            // Jpeg has no transparency, its corners are white
+            if (mFormat == Bitmap.CompressFormat.JPEG) {
+                canvas.drawColor(Color.WHITE);
+            }
+
+            // Content drawn on a layer and then cut to the rounded corners
+            canvas.saveLayer(bounds, null);
+            canvas.drawBitmap(image, null, new RectF(0, 0, mWidth, imageHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+
+            Paint labelPaint = new Paint();
+            labelPaint.setColor(item.color);
+            canvas.drawRect(0, imageHeight, mWidth, height, labelPaint);
+
+            CharSequence label = TextUtils.ellipsize(item.label != null ? item.label : "", textPaint,
+                    mWidth - 2 * padding, TextUtils.TruncateAt.END);
+            canvas.drawText(label, 0, label.length(), mWidth / 2f, imageHeight + padding - metrics.ascent, textPaint);
+
+            Paint maskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            maskPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_IN));
+            canvas.drawRoundRect(bounds, corner, corner, maskPaint);
+            canvas.restore();
+
+            return card;
+        } finally {
+            mMainHandler.post(() -> Glide.with(mContext).clear(future));
+        }
+    }
+
+    /**
+     * To remove the least recently shared cards over the limit
+     */
+    private void prune() {
+        File[] files = mDirectory.listFiles();
+
+        // Guard Code
+        if (files == null || files.length <= MAX_FILES) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+        for (int i = MAX_FILES; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * To get the name of the file of the card
+     * @param item item whose card is named
+     * @return name made from the hash of the content of the card
+     */
+    private String fileName(Item item) {
+        String content = item.url + "\n" + item.label + "\n" + item.color + "\n"
+                + mWidth + "\n" + mFormat + "\n" + mQuality;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(content.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return name.append(getExtension()).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * To get the type of the cards for the share intent
+     * @return mime type of the format
+     */
+    private String getMimeType() {
+        switch (mFormat) {
+            case JPEG:
+                return "image/jpeg";
+            case PNG:
+                return "image/png";
+            default:
+                return "image/webp";
+        }
+    }
+
+    /**
+     * To get the extension of the files of the cards
+     * @return extension of the format
+     */
+    private String getExtension() {
+        switch (mFormat) {
+            case JPEG:
+                return ".jpg";
+            case PNG:
+                return ".png";
+            default:
+                return ".webp";
+        }
+    }
+
+    /**
+     * Interface for the callbacks when the card is ready
+     */
+    public interface OnCompleteListener {
+        /**
+         * when the card is ready to be shared
+         * @param uri uri of the card, readable by the app it is granted to
+         * @param mimeType type of the card
+         */
+        void onSuccess(Uri uri, String mimeType);
+
+        /**
+         * when error occurred due to any specific reason
+         * @param error error which is occurred
+         */
+        void onError(String error);
+    }
+}
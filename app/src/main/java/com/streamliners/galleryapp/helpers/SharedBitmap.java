@@ -0,0 +1,151 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+
+/**
+ * Represents one decoded image read by several users at once, as the analysis and the preview
+ * Every user holds a reference, and the image is given back to Glide once the last one is released
+ */
+public class SharedBitmap {
+    // Image decoded, valid until the last reference is released
+    public final Bitmap bitmap;
+
+    // Context of the application, the image may outlive the activity
+    private final Context mContext;
+    // Target holding the image in Glide
+    private final CustomTarget<Bitmap> mTarget;
+    // To clear the load outside the callbacks of Glide
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // Number of the references not released yet
+    private int mRefCount = 1;
+
+    /**
+     * To wrap the loaded image with one reference, owned by the caller
+     * @param context context of the application
+     * @param bitmap image loaded
+     * @param target target holding the image in Glide
+     */
+    SharedBitmap(Context context, Bitmap bitmap, CustomTarget<Bitmap> target) {
+        this.mContext = context;
+        this.bitmap = bitmap;
+        this.mTarget = target;
+    }
+
+    /**
+     * To load the image once, unless the request is cancelled first
+     * The image is given with one reference, which the listener owns
+     * @param context context of the activity
+     * @param request request of the image
+     * @param token cancellation of the request, to be cancelled on the main thread
+     * @param listener listener for the callbacks, not called once the request is cancelled
+     */
+    public static void load(Context context, RequestBuilder<Bitmap> request, CancellationToken token, OnLoadListener listener) {
+        Context appContext = context.getApplicationContext();
+        // To check whether the image is loaded, its owner releases it then
+        boolean[] isLoaded = {false};
+
+        CustomTarget<Bitmap> target = request.into(new CustomTarget<Bitmap>() {
+            @Override
+            public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+                isLoaded[0] = true;
+                SharedBitmap image = new SharedBitmap(appContext, resource, this);
+
+                // Guard Code
+                if (token.isCancelled()) {
+                    image.release();
+                    return;
+                }
+
+                listener.onLoaded(image);
+            }
+
+            @Override
+            public void onLoadCleared(@Nullable Drawable placeholder) {
+            }
+
+            @Override
+            public void onLoadFailed(@Nullable Drawable errorDrawable) {
+                // Guard Code
+                if (token.isCancelled()) {
+                    return;
+                }
+
+                listener.onError("Image load failed");
+            }
+        });
+
+        // Load still running when cancelled is stopped, with its download
+        token.addOnCancelListener(() -> {
+            if (!isLoaded[0]) {
+                Glide.with(appContext).clear(target);
+            }
+        });
+    }
+
+    /**
+     * To take one more reference for a new user of the image
+     * @return this image
+     */
+    public synchronized SharedBitmap retain() {
+        // Guard Code
+        if (mRefCount == 0) {
+            throw new IllegalStateException("Image already given back");
+        }
+
+        mRefCount++;
+        return this;
+    }
+
+    /**
+     * To release one reference, the image is not to be read by its user afterwards
+     * Given back to Glide on the next loop once no reference is left, Glide does not allow it
+     * inside the callback of the load
+     */
+    public void release() {
+        synchronized (this) {
+            // Guard Code
+            if (mRefCount == 0 || --mRefCount > 0) {
+                return;
+            }
+        }
+
+        mMainHandler.post(() -> Glide.with(mContext).clear(mTarget));
+    }
+
+    /**
+     * To get the memory taken by the image
+     * @return size in bytes
+     */
+    public long getByteCount() {
+        return bitmap.getAllocationByteCount();
+    }
+
+    /**
+     * Interface for the callbacks of the load
+     */
+    public interface OnLoadListener {
+        /**
+         * when the image is loaded
+         * @param image image with one reference, to be released by the listener
+         */
+        void onLoaded(SharedBitmap image);
+
+        /**
+         * when error occurred due to any specific reason
+         * @param error error which is occurred
+         */
+        void onError(String error);
+    }
+}
@@ -0,0 +1,124 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.target.Target;
+import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.models.Thumbnail;
+
+import java.io.File;
+
+/**
+ * Helper class to load the images of the list cards
+ * A card shows its image at the width of the card, so the image is decoded at that width only
+ * and with half the bytes per pixel, keeping the memory flat however long the list is
+ */
+public class ThumbnailHelper {
+    /**
+     * To load the image of the item for the card
+     * The stored thumbnail is used when it is wide enough for the card, otherwise it is shown
+     * till the full image is loaded
+     * @param context context of the activity
+     * @param item item whose image is to be loaded
+     * @param width width of the image in the card
+     * @return request giving the image for the card
+     */
+    public static RequestBuilder<Bitmap> loadThumbnail(Context context, Item item, int width) {
+        RequestBuilder<Bitmap> full = loadThumbnail(context, item.url, width);
+        Thumbnail thumbnail = item.thumbnail;
+
+        // Guard Code
+        if (thumbnail == null) {
+            return full;
+        }
+
+        RequestBuilder<Bitmap> stored = applyProfile(Glide.with(context).asBitmap().load(new File(thumbnail.path)), width)
+                // Small local file, decoding it again is cheaper than caching it twice
+                .diskCacheStrategy(DiskCacheStrategy.NONE);
+
+        // Full image only when the card is wider than the thumbnail, or the thumbnail is gone
+        return needsFullImage(thumbnail, width) ? full.thumbnail(stored) : stored.error(full);
+    }
+
+    /**
+     * To load ahead the image of the item for the card, giving one image only
+     * The stored thumbnail shown before the full image is read from the device at once,
+     * so only the full image is loaded ahead when the card needs it
+     * @param context context of the activity
+     * @param item item whose image is to be loaded
+     * @param width width of the image in the card
+     * @return request giving the image for the card
+     */
+    public static RequestBuilder<Bitmap> preloadThumbnail(Context context, Item item, int width) {
+        return needsFullImage(item.thumbnail, width)
+                ? loadThumbnail(context, item.url, width)
+                : loadThumbnail(context, item, width);
+    }
+
+    /**
+     * To load the image for the card
+     * @param context context of the activity
+     * @param url url of the image
+     * @param width width of the image in the card
+     * @return request giving the image for the card
+     */
+    public static RequestBuilder<Bitmap> loadThumbnail(Context context, String url, int width) {
+        return applyProfile(Glide.with(context).asBitmap().load(url), width)
+                // Original kept by the image mirror, only the thumbnail is kept for scrolling back
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE);
+    }
+
+    /**
+     * To get the placeholder of the thumbnail, decoded already when the thumbnail was read
+     * It is a few pixels wide, so it looks blurred once scaled up to the card
+     * @param resources resources of the activity
+     * @param thumbnail thumbnail of the image, can be null
+     * @return placeholder, null if there is no thumbnail
+     */
+    public static Drawable getPlaceholder(Resources resources, Thumbnail thumbnail) {
+        // Guard Code
+        if (thumbnail == null || thumbnail.placeholderBitmap == null) {
+            return null;
+        }
+
+        return new BitmapDrawable(resources, thumbnail.placeholderBitmap);
+    }
+
+    /**
+     * To check whether the card is wider than the stored thumbnail, and the image is sharper
+     * @param thumbnail thumbnail of the image, can be null
+     * @param width width of the image in the card
+     * @return true if the full image is to be loaded
+     */
+    private static boolean needsFullImage(Thumbnail thumbnail, int width) {
+        return thumbnail == null || (!thumbnail.isFullSize && thumbnail.width < width);
+    }
+
+    /**
+     * To set the options of the list cards to the request
+     * @param request request of the image
+     * @param width width of the image in the card
+     * @return the request
+     */
+    private static RequestBuilder<Bitmap> applyProfile(RequestBuilder<Bitmap> request, int width) {
+        return request
+                // Height follows the aspect ratio of the image
+                .override(width, Target.SIZE_ORIGINAL)
+                // Decoded straight at the width, never scaled up
+                .downsample(DownsampleStrategy.CENTER_INSIDE)
+                // Already at the size shown, no second bitmap is made to fit it
+                .dontTransform()
+                // Photos have no alpha, half the memory of ARGB_8888
+                // Hardware bitmaps are allowed again, sharing no longer draws the list card
+                .format(DecodeFormat.PREFER_RGB_565);
+    }
+}
@@ -0,0 +1,215 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.CustomTarget;
+import com.bumptech.glide.request.transition.Transition;
+import com.streamliners.galleryapp.models.Item;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Scroll listener loading the card images just ahead of the scroll into Glide's memory cache
+ * The loads are the same as the ones of the cards, so a card bound later finds its image
+ * in the memory cache, or joins the load still running, instead of starting it then
+ * Used on the main thread only
+ */
+public class ThumbnailPreloader extends RecyclerView.OnScrollListener {
+    // Default number of the cards ahead of the visible ones to be loaded
+    public static final int DEFAULT_LOOKAHEAD = 6;
+    // Default number of the loads running at once
+    public static final int DEFAULT_MAX_CONCURRENT = 3;
+
+    // Application context, the loads may outlive the list
+    private final Context mContext;
+    // Gives the images of the cards
+    private final ModelProvider mProvider;
+    // Number of the cards ahead of the visible ones to be loaded
+    private final int mLookahead;
+    // Number of the loads running at once
+    private final int mMaxConcurrent;
+    // To clear the loads outside the callbacks of Glide
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Positions waiting to be loaded, nearest to the visible ones first
+    private final ArrayDeque<Integer> mPending = new ArrayDeque<>();
+    // Loads running
+    private final List<PreloadTarget> mRunning = new ArrayList<>();
+    // Urls loaded lately, not loaded again while they are likely still in the memory cache
+    private final Map<String, Boolean> mPreloaded;
+    // Direction of the scroll, 1 for down and -1 for up
+    private int mDirection;
+
+    /**
+     * To initialize the preloader with...
+     * @param context context of the activity
+     * @param provider gives the images of the cards
+     * @param lookahead number of the cards ahead of the visible ones to be loaded
+     * @param maxConcurrent number of the loads running at once
+     */
+    public ThumbnailPreloader(Context context, ModelProvider provider, int lookahead, int maxConcurrent) {
+        this.mContext = context.getApplicationContext();
+        this.mProvider = provider;
+        this.mLookahead = lookahead;
+        this.mMaxConcurrent = maxConcurrent;
+
+        int maxPreloaded = 4 * lookahead;
+        this.mPreloaded = new LinkedHashMap<String, Boolean>(maxPreloaded, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > maxPreloaded;
+            }
+        };
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        // Guard Code
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+
+        // Loads behind the scroll are no longer needed once it turns back
+        int direction = dy > 0 ? 1 : -1;
+        if (direction != mDirection) {
+            mDirection = direction;
+            cancel();
+        }
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+
+        // Guard Code
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        // Cards ahead of the visible ones, nearest first
+        mPending.clear();
+        int start = direction > 0 ? last + 1 : first - 1;
+        int count = recyclerView.getAdapter() == null ? 0 : recyclerView.getAdapter().getItemCount();
+        for (int i = 0; i < mLookahead; i++) {
+            int position = start + i * direction;
+            if (position < 0 || position >= count) {
+                break;
+            }
+            mPending.add(position);
+        }
+
+        pump();
+    }
+
+    /**
+     * To stop all the loads, for when the list changes or goes
+     */
+    public void cancel() {
+        mPending.clear();
+        for (PreloadTarget target : mRunning) {
+            mPreloaded.remove(target.url);
+            Glide.with(mContext).clear(target);
+        }
+        mRunning.clear();
+    }
+
+    /**
+     * To start the loads waiting while there is room for them
+     */
+    private void pump() {
+        int width = mProvider.getThumbnailWidth();
+
+        // Guard Code
+        if (width <= 0) {
+            return;
+        }
+
+        while (mRunning.size() < mMaxConcurrent && !mPending.isEmpty()) {
+            Item item = mProvider.getPreloadItem(mPending.poll());
+
+            // Card not loaded yet, or its image already loaded lately
+            if (item == null || mPreloaded.containsKey(item.url)) {
+                continue;
+            }
+
+            mPreloaded.put(item.url, true);
+            PreloadTarget target = new PreloadTarget(item.url);
+            mRunning.add(target);
+            ThumbnailHelper.preloadThumbnail(mContext, item, width).into(target);
+        }
+    }
+
+    /**
+     * To free the room of the load once it is over
+     * @param target target of the load
+     */
+    private void onPreloadDone(PreloadTarget target) {
+        // Guard Code
+        if (!mRunning.remove(target)) {
+            return;
+        }
+
+        // Cleared target leaves its image in the memory cache
+        mMainHandler.post(() -> Glide.with(mContext).clear(target));
+        pump();
+    }
+
+    /**
+     * Target of a load, holding nothing but the url
+     */
+    private class PreloadTarget extends CustomTarget<Bitmap> {
+        // Url of the image
+        private final String url;
+
+        PreloadTarget(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void onResourceReady(@NonNull Bitmap resource, @Nullable Transition<? super Bitmap> transition) {
+            onPreloadDone(this);
+        }
+
+        @Override
+        public void onLoadFailed(@Nullable Drawable errorDrawable) {
+            // Failed image is tried again by its card
+            mPreloaded.remove(url);
+            onPreloadDone(this);
+        }
+
+        @Override
+        public void onLoadCleared(@Nullable Drawable placeholder) {
+        }
+    }
+
+    /**
+     * Interface giving the images of the cards
+     */
+    public interface ModelProvider {
+        /**
+         * To get the item of the card
+         * @param position position of the card
+         * @return item, null if it is not loaded yet
+         */
+        Item getPreloadItem(int position);
+
+        /**
+         * To get the width the card images are decoded at
+         * @return width, 0 if it is not measured yet
+         */
+        int getThumbnailWidth();
+    }
+}
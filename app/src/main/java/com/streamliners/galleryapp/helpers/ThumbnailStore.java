@@ -0,0 +1,263 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.bumptech.glide.request.target.Target;
+import com.streamliners.galleryapp.models.Thumbnail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Helper class to make and keep the thumbnails of the images on the device
+ * A thumbnail is made once when the image is added, or when an older item is first shown,
+ * so the list draws from the device instead of the network or the full size image
+ * The thumbnails are stored under the url of the image, next to the items in the database
+ */
+public class ThumbnailStore implements CacheCoordinator.TrimmableCache {
+    // Folder of the thumbnails in the files of the app
+    private static final String DIRECTORY_NAME = "thumbnails";
+    // Quality of the stored thumbnails
+    private static final int THUMBNAIL_QUALITY = 85;
+    // Width of the placeholders, shown scaled up so they look blurred
+    private static final int PLACEHOLDER_WIDTH = 16;
+    // Quality of the placeholders
+    private static final int PLACEHOLDER_QUALITY = 70;
+    // Number of the thumbnails being made at most, more are made when their cards are shown again
+    private static final int MAX_PENDING = 32;
+    // Number of the thumbnails made lately kept for the items loaded before they were made
+    private static final int MAX_RECENT = 100;
+    // Rough memory of a thumbnail kept besides its placeholder, for the size of the cache
+    private static final int RECENT_ENTRY_BYTES = 256;
+
+    // Application context for the loads
+    private final Context mContext;
+    // Database having the thumbnails
+    private final databaseHelper mDbHelper;
+    // Folder of the thumbnails
+    private final File mDirectory;
+    // Width of the thumbnails, the width of the screen in portrait
+    private final int mWidth;
+    // Worker making the thumbnails, one at a time
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    // To give the results on the main thread
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Urls whose thumbnails are being made, used on the main thread
+    private final Set<String> mPending = new HashSet<>();
+    // Urls whose thumbnails could not be made, not tried again till the app restarts
+    private final Set<String> mFailed = new HashSet<>();
+    // Thumbnails made lately keyed by the url of the image
+    private final LruCache<String, Thumbnail> mRecent = new LruCache<>(MAX_RECENT);
+
+    /**
+     * To initialize the store with...
+     * The thumbnails of the deleted items are removed first, in the background
+     * @param context context of the app
+     * @param dbHelper database having the thumbnails
+     */
+    public ThumbnailStore(Context context, databaseHelper dbHelper) {
+        this.mContext = context.getApplicationContext();
+        this.mDbHelper = dbHelper;
+        this.mDirectory = new File(mContext.getFilesDir(), DIRECTORY_NAME);
+
+        DisplayMetrics metrics = mContext.getResources().getDisplayMetrics();
+        this.mWidth = Math.min(metrics.widthPixels, metrics.heightPixels);
+
+        mExecutor.execute(this::prune);
+    }
+
+    /**
+     * To get the thumbnail made after the item was loaded, making it if there is none
+     * Called on the main thread
+     * @param url url of the image
+     * @return thumbnail, null if it is not made yet
+     */
+    public Thumbnail get(String url) {
+        Thumbnail thumbnail = mRecent.get(url);
+        if (thumbnail == null) {
+            create(url);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * To make the thumbnail of the image in the background
+     * Called on the main thread
+     * @param url url of the image
+     */
+    public void create(String url) {
+        // Guard Code
+        if (mPending.contains(url) || mFailed.contains(url) || mPending.size() >= MAX_PENDING) {
+            return;
+        }
+
+        mPending.add(url);
+        mExecutor.execute(() -> {
+            Thumbnail thumbnail = null;
+            try {
+                thumbnail = make(url);
+            } catch (Exception e) {
+                System.err.println(e.toString());
+            }
+
+            Thumbnail result = thumbnail;
+            mMainHandler.post(() -> {
+                mPending.remove(url);
+                if (result != null) {
+                    mRecent.put(url, result);
+                } else {
+                    mFailed.add(url);
+                }
+            });
+        });
+    }
+
+    /**
+     * To get the memory taken by the thumbnails made lately
+     * @return estimated size in bytes
+     */
+    @Override
+    public long getSizeBytes() {
+        long size = 0;
+        for (Thumbnail thumbnail : mRecent.snapshot().values()) {
+            size += RECENT_ENTRY_BYTES + thumbnail.placeholder.length;
+            if (thumbnail.placeholderBitmap != null) {
+                size += thumbnail.placeholderBitmap.getAllocationByteCount();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * To forget the thumbnails made lately, the least recent half first
+     * A card missing its thumbnail has it made again, so all of them go only in the background
+     * @param level trim level given by the system
+     */
+    @Override
+    public void trim(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mRecent.evictAll();
+        } else {
+            mRecent.trimToSize(mRecent.size() / 2);
+        }
+    }
+
+    /**
+     * To load the image at the width of the thumbnails and store it with its placeholder
+     * @param url url of the image
+     * @return thumbnail stored
+     * @throws Exception if the image could not be loaded or stored
+     */
+    private Thumbnail make(String url) throws Exception {
+        // Read from the device, the original was stored by the mirror when it was added
+        FutureTarget<Bitmap> future = Glide.with(mContext)
+                .asBitmap()
+                .load(url)
+                .override(mWidth, Target.SIZE_ORIGINAL)
+                .downsample(DownsampleStrategy.CENTER_INSIDE)
+                .format(DecodeFormat.PREFER_ARGB_8888)
+                .disallowHardwareConfig()
+                .submit();
+
+        try {
+            Bitmap bitmap = future.get();
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+
+            File file = new File(mDirectory, fileName(url));
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, outputStream);
+            }
+
+            // Images narrower than the thumbnails are never scaled down
+            Thumbnail thumbnail = new Thumbnail(file.getPath(), width, width < mWidth,
+                    (float) width / height, makePlaceholder(bitmap));
+            mDbHelper.saveThumbnail(url, thumbnail);
+            return thumbnail;
+        } finally {
+            mMainHandler.post(() -> Glide.with(mContext).clear(future));
+        }
+    }
+
+    /**
+     * To make the tiny copy of the image
+     * @param bitmap image at the width of the thumbnails
+     * @return tiny copy in jpeg format
+     */
+    private byte[] makePlaceholder(Bitmap bitmap) {
+        int height = Math.max(1, Math.round((float) PLACEHOLDER_WIDTH * bitmap.getHeight() / bitmap.getWidth()));
+        Bitmap placeholder = Bitmap.createScaledBitmap(bitmap, PLACEHOLDER_WIDTH, height, true);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        placeholder.compress(Bitmap.CompressFormat.JPEG, PLACEHOLDER_QUALITY, outputStream);
+
+        // Scaling to the same size gives the same bitmap, which Glide still holds
+        if (placeholder != bitmap) {
+            placeholder.recycle();
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * To remove the thumbnails no item shows anymore, and the files of none
+     */
+    private void prune() {
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Cannot create " + mDirectory);
+            }
+
+            Set<String> paths = mDbHelper.deleteUnusedThumbnails();
+            File[] files = mDirectory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (!paths.contains(file.getPath())) {
+                        file.delete();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            System.err.println(e.toString());
+        }
+    }
+
+    /**
+     * To get the name of the file of the thumbnail
+     * @param url url of the image
+     * @return name made from the hash of the url
+     */
+    private static String fileName(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format(Locale.ROOT, "%02x", b));
+            }
+            return name.append(".jpg").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
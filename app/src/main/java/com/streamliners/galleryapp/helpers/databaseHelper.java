@@ -3,13 +3,25 @@ package com.streamliners.galleryapp.helpers;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
 
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.streamliners.galleryapp.models.ImageAnalysis;
 import com.streamliners.galleryapp.models.Item;
+import com.streamliners.galleryapp.models.ItemQuery;
+import com.streamliners.galleryapp.models.Thumbnail;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Represents helper class for the sqlite database
@@ -17,98 +29,758 @@ import java.util.List;
 public class databaseHelper extends SQLiteOpenHelper {
     // Database name
     private static final String DATABASE_NAME = "Sql Database";
+    // Version of the database schema
+    private static final int DATABASE_VERSION = 9;
     // Table name
     private static final String TABLE_NAME = "Items";
+    // Full text index of the labels, kept in sync with the items table through triggers
+    private static final String FTS_TABLE_NAME = "ItemsFts";
+    // Colors and labels found in the images, kept so that the images are not analysed twice
+    private static final String ANALYSIS_TABLE_NAME = "Analyses";
+    // Copies of the images kept on the device, keyed by the url of the image
+    private static final String THUMBNAIL_TABLE_NAME = "Thumbnails";
+    // Originals of the network images kept on the device, a file per content shared by the urls
+    private static final String ORIGINAL_TABLE_NAME = "Originals";
 
     // Keys for storing data
+    private static final String KEY_ID = "Id";
     private static final String KEY_LABEL = "Label";
     private static final String KEY_COLOR = "Color";
     private static final String KEY_IMAGE_URL = "ImageUrl";
+    private static final String KEY_POSITION = "Position";
+
+    // Keys for storing the analyses
+    private static final String KEY_URL = "Url";
+    private static final String KEY_HASH = "Hash";
+    private static final String KEY_COLORS = "Colors";
+    private static final String KEY_LABELS = "Labels";
+    private static final String KEY_LAST_USED = "LastUsed";
+
+    // Keys for storing the thumbnails, the url key is shared with the analyses
+    private static final String KEY_PATH = "Path";
+    private static final String KEY_WIDTH = "Width";
+    private static final String KEY_IS_FULL_SIZE = "IsFullSize";
+    private static final String KEY_ASPECT_RATIO = "AspectRatio";
+    private static final String KEY_PLACEHOLDER = "Placeholder";
+
+    // Keys for storing the originals, the url, hash and last use keys are shared with the analyses
+    private static final String KEY_SIZE = "Size";
+
+    // To store the colors and labels as text
+    private final Gson gson = new Gson();
 
     /**
      * Constructor to initialize the helper
      * @param context context of the main activity
      */
     public databaseHelper(Context context) {
-        super(context, DATABASE_NAME, null, 3);
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
     @Override
     public void onCreate(SQLiteDatabase db) {
-        String query = "CREATE TABLE " + TABLE_NAME + "(" +
-                KEY_LABEL + " TEXT, " +
-                KEY_COLOR + " INTEGER, " +
-                KEY_IMAGE_URL + " TEXT" + ")";
-
-        // Executing the query
-        db.execSQL(query);
+        createItemsTable(db, TABLE_NAME);
+        createItemsIndexes(db);
+        createLabelIndex(db);
+        createAnalysisTable(db);
+        createThumbnailTable(db);
+        createOriginalTable(db);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        String query = "DROP TABLE IF EXISTS " + TABLE_NAME;
-        // Executing the query and then closing database
+        // Applying every migration step one after another
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            switch (version) {
+                case 4:
+                    migrateToVersion4(db);
+                    break;
+                case 5:
+                    migrateToVersion5(db);
+                    break;
+                case 6:
+                    createAnalysisTable(db);
+                    break;
+                case 7:
+                    createThumbnailTable(db);
+                    break;
+                case 8:
+                    createOriginalTable(db);
+                    break;
+                case 9:
+                    migrateToVersion9(db);
+                    break;
+                default:
+                    // Versions up to 3 share the same table
+                    break;
+            }
+        }
+    }
+
+    // Schema methods
+
+    /**
+     * To create the table for the items
+     * @param db database in which the table is to be created
+     * @param tableName name of the table
+     */
+    private void createItemsTable(SQLiteDatabase db, String tableName) {
+        String query = "CREATE TABLE " + tableName + "(" +
+                KEY_ID + " INTEGER PRIMARY KEY, " +
+                KEY_LABEL + " TEXT NOT NULL, " +
+                KEY_COLOR + " INTEGER NOT NULL, " +
+                KEY_IMAGE_URL + " TEXT NOT NULL, " +
+                KEY_POSITION + " INTEGER NOT NULL" + ")";
+
+        // Executing the query
         db.execSQL(query);
-        onCreate(db);
     }
 
     /**
-     * To add item in the database table
-     * @param item item to be added
+     * To create the indexes on the items table
+     * @param db database in which the indexes are to be created
      */
-    public void addItem (Item item) {
-        SQLiteDatabase db = getWritableDatabase();
-        ContentValues values = new ContentValues();
+    private void createItemsIndexes(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + KEY_LABEL +
+                " ON " + TABLE_NAME + "(" + KEY_LABEL + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + KEY_COLOR +
+                " ON " + TABLE_NAME + "(" + KEY_COLOR + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS " + TABLE_NAME + "_" + KEY_POSITION +
+                " ON " + TABLE_NAME + "(" + KEY_POSITION + ")");
+    }
+
+    /**
+     * Version 4 adds the primary key and the position of the items
+     * Old rows keep their order, the rowid becomes their id and position
+     * @param db database to be migrated
+     */
+    private void migrateToVersion4(SQLiteDatabase db) {
+        String newTableName = TABLE_NAME + "_new";
+
+        createItemsTable(db, newTableName);
+        db.execSQL("INSERT INTO " + newTableName + "(" +
+                KEY_ID + ", " + KEY_LABEL + ", " + KEY_COLOR + ", " + KEY_IMAGE_URL + ", " + KEY_POSITION + ") " +
+                "SELECT rowid, IFNULL(" + KEY_LABEL + ", ''), IFNULL(" + KEY_COLOR + ", 0), " +
+                "IFNULL(" + KEY_IMAGE_URL + ", ''), rowid FROM " + TABLE_NAME);
+        db.execSQL("DROP TABLE " + TABLE_NAME);
+        db.execSQL("ALTER TABLE " + newTableName + " RENAME TO " + TABLE_NAME);
+        createItemsIndexes(db);
+    }
+
+    /**
+     * Version 5 adds the full text index of the labels
+     * @param db database to be migrated
+     */
+    private void migrateToVersion5(SQLiteDatabase db) {
+        createLabelIndex(db);
+
+        // Indexing the labels already stored
+        db.execSQL("INSERT INTO " + FTS_TABLE_NAME + "(" + FTS_TABLE_NAME + ") VALUES('rebuild')");
+    }
+
+    /**
+     * Version 9 stops the position and color changes from rewriting the full text index
+     * @param db database to be migrated
+     */
+    private void migrateToVersion9(SQLiteDatabase db) {
+        db.execSQL("DROP TRIGGER IF EXISTS " + FTS_TABLE_NAME + "_before_update");
+        db.execSQL("DROP TRIGGER IF EXISTS " + FTS_TABLE_NAME + "_after_update");
+        createLabelUpdateTriggers(db);
+    }
+
+    /**
+     * To create the full text index of the labels and the triggers keeping it in sync
+     * Only the label is indexed, the rows themselves stay in the items table
+     * @param db database in which the index is to be created
+     */
+    private void createLabelIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE " + FTS_TABLE_NAME + " USING fts4(" +
+                "content=\"" + TABLE_NAME + "\", " + KEY_LABEL + ", " +
+                "tokenize=unicode61, prefix=\"2,3\")");
+
+        db.execSQL("CREATE TRIGGER " + FTS_TABLE_NAME + "_insert AFTER INSERT ON " + TABLE_NAME + " BEGIN " +
+                "INSERT INTO " + FTS_TABLE_NAME + "(docid, " + KEY_LABEL + ") " +
+                "VALUES (new." + KEY_ID + ", new." + KEY_LABEL + "); END");
+        db.execSQL("CREATE TRIGGER " + FTS_TABLE_NAME + "_delete BEFORE DELETE ON " + TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + FTS_TABLE_NAME + " WHERE docid = old." + KEY_ID + "; END");
+
+        createLabelUpdateTriggers(db);
+    }
+
+    /**
+     * To create the triggers reindexing the label of an updated item
+     * Every saved row sets its label again, so the triggers check that it really changed,
+     * moving the items then does not touch the index
+     * @param db database in which the triggers are to be created
+     */
+    private void createLabelUpdateTriggers(SQLiteDatabase db) {
+        String labelChanged = " WHEN old." + KEY_LABEL + " IS NOT new." + KEY_LABEL;
+
+        db.execSQL("CREATE TRIGGER " + FTS_TABLE_NAME + "_before_update BEFORE UPDATE OF " + KEY_LABEL +
+                " ON " + TABLE_NAME + labelChanged + " BEGIN " +
+                "DELETE FROM " + FTS_TABLE_NAME + " WHERE docid = old." + KEY_ID + "; END");
+        db.execSQL("CREATE TRIGGER " + FTS_TABLE_NAME + "_after_update AFTER UPDATE OF " + KEY_LABEL +
+                " ON " + TABLE_NAME + labelChanged + " BEGIN " +
+                "INSERT INTO " + FTS_TABLE_NAME + "(docid, " + KEY_LABEL + ") " +
+                "VALUES (new." + KEY_ID + ", new." + KEY_LABEL + "); END");
+    }
+
+    /**
+     * To create the table for the analyses of the images, added in version 6
+     * @param db database in which the table is to be created
+     */
+    private void createAnalysisTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ANALYSIS_TABLE_NAME + "(" +
+                KEY_URL + " TEXT PRIMARY KEY, " +
+                KEY_HASH + " TEXT NOT NULL, " +
+                KEY_COLORS + " TEXT NOT NULL, " +
+                KEY_LABELS + " TEXT NOT NULL, " +
+                KEY_LAST_USED + " INTEGER NOT NULL" + ")");
+        db.execSQL("CREATE INDEX " + ANALYSIS_TABLE_NAME + "_" + KEY_HASH +
+                " ON " + ANALYSIS_TABLE_NAME + "(" + KEY_HASH + ")");
+        db.execSQL("CREATE INDEX " + ANALYSIS_TABLE_NAME + "_" + KEY_LAST_USED +
+                " ON " + ANALYSIS_TABLE_NAME + "(" + KEY_LAST_USED + ")");
+    }
 
-        values.put(KEY_LABEL, item.label);
-        values.put(KEY_COLOR, item.color);
-        values.put(KEY_IMAGE_URL, item.url);
+    /**
+     * To create the table for the thumbnails of the images, added in version 7
+     * @param db database in which the table is to be created
+     */
+    private void createThumbnailTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + THUMBNAIL_TABLE_NAME + "(" +
+                KEY_URL + " TEXT PRIMARY KEY, " +
+                KEY_PATH + " TEXT NOT NULL, " +
+                KEY_WIDTH + " INTEGER NOT NULL, " +
+                KEY_IS_FULL_SIZE + " INTEGER NOT NULL, " +
+                KEY_ASPECT_RATIO + " REAL NOT NULL, " +
+                KEY_PLACEHOLDER + " BLOB NOT NULL" + ")");
+    }
+
+    /**
+     * To create the table for the originals of the network images, added in version 8
+     * @param db database in which the table is to be created
+     */
+    private void createOriginalTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + ORIGINAL_TABLE_NAME + "(" +
+                KEY_URL + " TEXT PRIMARY KEY, " +
+                KEY_HASH + " TEXT NOT NULL, " +
+                KEY_SIZE + " INTEGER NOT NULL, " +
+                KEY_LAST_USED + " INTEGER NOT NULL" + ")");
+        db.execSQL("CREATE INDEX " + ORIGINAL_TABLE_NAME + "_" + KEY_HASH +
+                " ON " + ORIGINAL_TABLE_NAME + "(" + KEY_HASH + ")");
+        db.execSQL("CREATE INDEX " + ORIGINAL_TABLE_NAME + "_" + KEY_LAST_USED +
+                " ON " + ORIGINAL_TABLE_NAME + "(" + KEY_LAST_USED + ")");
+    }
+
+    // Data methods
+
+    /**
+     * To count the items matching the query
+     * @param query query for the items
+     * @param signal signal to cancel the query, can be null
+     * @return number of the items
+     */
+    public int fetchItemCount(ItemQuery query, CancellationSignal signal) {
+        List<String> args = new ArrayList<>();
+        String selection = buildSelection(query, args);
+
+        String sql = "SELECT COUNT(*) FROM " + TABLE_NAME + (selection == null ? "" : " WHERE " + selection);
 
-        // Inserting the item and then closing database
-        db.insert(TABLE_NAME, null, values);
-        db.close();
+        // Executing the query and then getting the cursor
+        Cursor cursor = getReadableDatabase().rawQuery(sql, args.toArray(new String[0]), signal);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Fetching a page of the items matching the query
+     * @param query query for the items
+     * @param offset number of the items to be skipped
+     * @param limit maximum number of the items
+     * @param signal signal to cancel the query, can be null
+     * @return List of the items in the page
+     */
+    public List<Item> fetchItems(ItemQuery query, int offset, int limit, CancellationSignal signal) {
+        List<String> args = new ArrayList<>();
+        String selection = buildSelection(query, args);
+
+        return fetchItems(selection, args, buildOrder(query, args) + " LIMIT " + limit + " OFFSET " + offset, signal);
     }
 
     /**
-     * Fetching all items from the database table
-     * @return List of all items
+     * Fetching a page of the items coming after the given item
+     * The page is located through the indexes, so it does not depend on the number of items before it
+     * Not for the searched items, they are ordered by relevance
+     * @param query query for the items
+     * @param afterLabel label of the last item of the previous page
+     * @param afterPosition position of the last item of the previous page
+     * @param limit maximum number of the items
+     * @return List of the items in the page
      */
-    public List<Item> fetchItems() {
+    public List<Item> fetchItemsAfter(ItemQuery query, String afterLabel, long afterPosition, int limit) {
+        List<String> args = new ArrayList<>();
+        String selection = buildSelection(query, args);
+
+        // Condition for the items after the given one in the order of the query
+        String keyset;
+        if (query.isSortedByLabel) {
+            keyset = "(" + KEY_LABEL + " > ? OR (" + KEY_LABEL + " = ? AND " + KEY_POSITION + " > ?))";
+            args.add(afterLabel);
+            args.add(afterLabel);
+        } else {
+            keyset = KEY_POSITION + " > ?";
+        }
+        args.add(String.valueOf(afterPosition));
+
+        selection = selection == null ? keyset : selection + " AND " + keyset;
+        return fetchItems(selection, args, buildOrder(query, args) + " LIMIT " + limit, null);
+    }
+
+    /**
+     * To execute the query for the items
+     * @param selection condition for the items, null for all
+     * @param args arguments of the condition
+     * @param orderAndLimit order and limit clauses
+     * @param signal signal to cancel the query, can be null
+     * @return List of the items
+     */
+    private List<Item> fetchItems(String selection, List<String> args, String orderAndLimit, CancellationSignal signal) {
         SQLiteDatabase db = getReadableDatabase();
         List<Item> result = new ArrayList<>();
 
-        String query = "SELECT * FROM " + TABLE_NAME;
+        // Thumbnails come with the items, looked up by the primary key of their url
+        String query = "SELECT " + TABLE_NAME + ".*, " +
+                KEY_PATH + ", " + KEY_WIDTH + ", " + KEY_IS_FULL_SIZE + ", " + KEY_ASPECT_RATIO + ", " + KEY_PLACEHOLDER +
+                " FROM " + TABLE_NAME + " LEFT JOIN " + THUMBNAIL_TABLE_NAME +
+                " ON " + KEY_IMAGE_URL + " = " + KEY_URL +
+                (selection == null ? "" : " WHERE " + selection) +
+                " ORDER BY " + orderAndLimit;
 
         // Executing the query and then getting the cursor
-        Cursor cursor = db.rawQuery(query, null);
+        Cursor cursor = db.rawQuery(query, args.toArray(new String[0]), signal);
 
         if (cursor.moveToFirst()) {
+            // Column indexes are looked up once by their names
+            int idIndex = cursor.getColumnIndexOrThrow(KEY_ID);
+            int urlIndex = cursor.getColumnIndexOrThrow(KEY_IMAGE_URL);
+            int colorIndex = cursor.getColumnIndexOrThrow(KEY_COLOR);
+            int labelIndex = cursor.getColumnIndexOrThrow(KEY_LABEL);
+            int positionIndex = cursor.getColumnIndexOrThrow(KEY_POSITION);
+            int pathIndex = cursor.getColumnIndexOrThrow(KEY_PATH);
+            int widthIndex = cursor.getColumnIndexOrThrow(KEY_WIDTH);
+            int isFullSizeIndex = cursor.getColumnIndexOrThrow(KEY_IS_FULL_SIZE);
+            int aspectRatioIndex = cursor.getColumnIndexOrThrow(KEY_ASPECT_RATIO);
+            int placeholderIndex = cursor.getColumnIndexOrThrow(KEY_PLACEHOLDER);
+
             do {
                 Item item = new Item(
-                        cursor.getString(2),
-                        cursor.getInt(1),
-                        cursor.getString(0)
+                        cursor.getLong(idIndex),
+                        cursor.getString(urlIndex),
+                        cursor.getInt(colorIndex),
+                        cursor.getString(labelIndex)
                 );
+                item.position = cursor.getLong(positionIndex);
+                if (!cursor.isNull(pathIndex)) {
+                    item.thumbnail = new Thumbnail(
+                            cursor.getString(pathIndex),
+                            cursor.getInt(widthIndex),
+                            cursor.getInt(isFullSizeIndex) != 0,
+                            cursor.getFloat(aspectRatioIndex),
+                            cursor.getBlob(placeholderIndex)
+                    );
+                }
                 result.add(item);
             } while (cursor.moveToNext());
         }
 
-        // Closing cursor and database
+        // Closing cursor
         cursor.close();
-        db.close();
 
         return result;
     }
 
     /**
-     * To clear all item in the database table
+     * To build the condition for the items of the query
+     * @param query query for the items
+     * @param args list to which the arguments of the condition are added
+     * @return the condition, null for all the items
      */
-    public void clearAllItems() {
+    private String buildSelection(ItemQuery query, List<String> args) {
+        if (query.searchText.isEmpty()) {
+            return null;
+        }
+
+        // Every word typed has to be the prefix of a word in the label
+        StringBuilder match = new StringBuilder();
+        for (String token : ItemQuery.tokenize(query.searchText)) {
+            match.append(token).append("* ");
+        }
+
+        // Nothing searchable was typed
+        if (match.length() == 0) {
+            return "0";
+        }
+
+        args.add(match.toString().trim());
+        return KEY_ID + " IN (SELECT docid FROM " + FTS_TABLE_NAME +
+                " WHERE " + FTS_TABLE_NAME + " MATCH ?)";
+    }
+
+    /**
+     * To build the order of the items of the query
+     * Searched items are ranked by relevance: exact labels, then labels starting with the text,
+     * then shorter labels first
+     * @param query query for the items
+     * @param args list to which the arguments of the order are added
+     * @return the order clause
+     */
+    private String buildOrder(ItemQuery query, List<String> args) {
+        if (query.isSortedByLabel) {
+            return KEY_LABEL + ", " + KEY_POSITION;
+        }
+        if (query.searchText.isEmpty()) {
+            return KEY_POSITION;
+        }
+
+        // Escaping the wildcards typed by the user
+        String prefix = query.searchText
+                .replace("\\", "\\\\")
+                .replace("%", "\\%")
+                .replace("_", "\\_") + "%";
+        args.add(query.searchText);
+        args.add(prefix);
+        return "CASE WHEN " + KEY_LABEL + " = ? COLLATE NOCASE THEN 0 " +
+                "WHEN " + KEY_LABEL + " LIKE ? ESCAPE '\\' THEN 1 ELSE 2 END, " +
+                "length(" + KEY_LABEL + "), " + KEY_POSITION;
+    }
+
+    /**
+     * To get the id of the last item in the database table
+     * @return largest item id, 0 if the table is empty
+     */
+    public long fetchLastItemId() {
+        return DatabaseUtils.longForQuery(getReadableDatabase(),
+                "SELECT IFNULL(MAX(" + KEY_ID + "), 0) FROM " + TABLE_NAME, null);
+    }
+
+    /**
+     * To get the position of the last item in the database table
+     * @return largest position, 0 if the table is empty
+     */
+    public long fetchLastPosition() {
+        return DatabaseUtils.longForQuery(getReadableDatabase(),
+                "SELECT IFNULL(MAX(" + KEY_POSITION + "), 0) FROM " + TABLE_NAME, null);
+    }
+
+    /**
+     * To write the changed rows in a single transaction
+     * @param changes changed rows keyed by their id, null item for the deleted rows
+     */
+    public void applyChanges(Map<Long, Item> changes) {
         SQLiteDatabase db = getWritableDatabase();
-        String query = "DELETE FROM " + TABLE_NAME;
 
-        // Executing the query and then closing database
-        db.execSQL(query);
-        db.close();
+        // Statements are compiled once and reused for every row
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_NAME + " SET " +
+                KEY_LABEL + " = ?, " + KEY_COLOR + " = ?, " + KEY_IMAGE_URL + " = ?, " + KEY_POSITION + " = ? " +
+                "WHERE " + KEY_ID + " = ?");
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_NAME + "(" +
+                KEY_LABEL + ", " + KEY_COLOR + ", " + KEY_IMAGE_URL + ", " + KEY_POSITION + ", " + KEY_ID + ") " +
+                "VALUES (?, ?, ?, ?, ?)");
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_NAME + " WHERE " + KEY_ID + " = ?");
+
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Long, Item> change : changes.entrySet()) {
+                long id = change.getKey();
+                Item item = change.getValue();
+
+                // Item removed from the list
+                if (item == null) {
+                    delete.bindLong(1, id);
+                    delete.executeUpdateDelete();
+                    continue;
+                }
+
+                // Update the row if it exists otherwise insert it
+                bindItem(update, item);
+                update.bindLong(5, id);
+                if (update.executeUpdateDelete() == 0) {
+                    bindItem(insert, item);
+                    insert.bindLong(5, id);
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            update.close();
+            insert.close();
+            delete.close();
+        }
+    }
+
+    // Analysis methods
+
+    /**
+     * To get the analysis of the image stored for the url
+     * @param url url of the image
+     * @param time current time, stored as the last use of the analysis
+     * @return analysis of the image, null if it is not stored
+     */
+    public ImageAnalysis fetchAnalysis(String url, long time) {
+        return fetchAnalysis(KEY_URL + " = ?", url, time);
+    }
+
+    /**
+     * To get the analysis stored for any image having the same content
+     * @param hash hash of the image content
+     * @param time current time, stored as the last use of the analysis
+     * @return analysis of the image, null if it is not stored
+     */
+    public ImageAnalysis fetchAnalysisByHash(String hash, long time) {
+        return fetchAnalysis(KEY_HASH + " = ?", hash, time);
+    }
+
+    /**
+     * To get the most recently used analysis matching the selection and mark it used
+     * @param selection where clause having one parameter
+     * @param arg argument of the where clause
+     * @param time current time, stored as the last use of the analysis
+     * @return analysis of the image, null if it is not stored
+     */
+    private ImageAnalysis fetchAnalysis(String selection, String arg, long time) {
+        SQLiteDatabase db = getWritableDatabase();
+        ImageAnalysis analysis = null;
+
+        Cursor cursor = db.rawQuery("SELECT " + KEY_URL + ", " + KEY_HASH + ", " + KEY_COLORS + ", " + KEY_LABELS +
+                " FROM " + ANALYSIS_TABLE_NAME + " WHERE " + selection +
+                " ORDER BY " + KEY_LAST_USED + " DESC LIMIT 1", new String[]{arg});
+        try {
+            if (cursor.moveToFirst()) {
+                Set<Integer> colors = gson.fromJson(cursor.getString(2),
+                        new TypeToken<LinkedHashSet<Integer>>() {}.getType());
+                List<String> labels = gson.fromJson(cursor.getString(3),
+                        new TypeToken<ArrayList<String>>() {}.getType());
+                analysis = new ImageAnalysis(cursor.getString(0), cursor.getString(1), colors, labels);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // Recently used analyses are the last to be evicted
+        if (analysis != null) {
+            ContentValues values = new ContentValues();
+            values.put(KEY_LAST_USED, time);
+            db.update(ANALYSIS_TABLE_NAME, values, KEY_URL + " = ?", new String[]{analysis.url});
+        }
+        return analysis;
+    }
+
+    /**
+     * To store the analysis of the image, replacing the one stored for the same url
+     * Least recently used analyses beyond the limit are evicted
+     * @param analysis analysis of the image
+     * @param time current time, stored as the last use of the analysis
+     * @param maxCount maximum number of the analyses kept
+     */
+    public void saveAnalysis(ImageAnalysis analysis, long time, int maxCount) {
+        SQLiteDatabase db = getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put(KEY_URL, analysis.url);
+        values.put(KEY_HASH, analysis.hash);
+        values.put(KEY_COLORS, gson.toJson(analysis.colors));
+        values.put(KEY_LABELS, gson.toJson(analysis.labels));
+        values.put(KEY_LAST_USED, time);
+
+        db.beginTransaction();
+        try {
+            db.insertWithOnConflict(ANALYSIS_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.execSQL("DELETE FROM " + ANALYSIS_TABLE_NAME + " WHERE " + KEY_URL + " NOT IN (" +
+                    "SELECT " + KEY_URL + " FROM " + ANALYSIS_TABLE_NAME +
+                    " ORDER BY " + KEY_LAST_USED + " DESC LIMIT " + maxCount + ")");
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * To remove the analysis stored for the url
+     * @param url url of the image
+     */
+    public void deleteAnalysis(String url) {
+        getWritableDatabase().delete(ANALYSIS_TABLE_NAME, KEY_URL + " = ?", new String[]{url});
+    }
+
+    // Thumbnail methods
+
+    /**
+     * To store the thumbnail of the image, replacing the one stored for the same url
+     * @param url url of the image
+     * @param thumbnail thumbnail of the image
+     */
+    public void saveThumbnail(String url, Thumbnail thumbnail) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_URL, url);
+        values.put(KEY_PATH, thumbnail.path);
+        values.put(KEY_WIDTH, thumbnail.width);
+        values.put(KEY_IS_FULL_SIZE, thumbnail.isFullSize ? 1 : 0);
+        values.put(KEY_ASPECT_RATIO, thumbnail.aspectRatio);
+        values.put(KEY_PLACEHOLDER, thumbnail.placeholder);
+
+        getWritableDatabase().insertWithOnConflict(THUMBNAIL_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * To remove the thumbnails of the images no item shows anymore
+     * @return paths of the thumbnails still stored
+     */
+    public Set<String> deleteUnusedThumbnails() {
+        SQLiteDatabase db = getWritableDatabase();
+        db.execSQL("DELETE FROM " + THUMBNAIL_TABLE_NAME + " WHERE " + KEY_URL + " NOT IN (" +
+                "SELECT " + KEY_IMAGE_URL + " FROM " + TABLE_NAME + ")");
+
+        Set<String> paths = new HashSet<>();
+        Cursor cursor = db.rawQuery("SELECT " + KEY_PATH + " FROM " + THUMBNAIL_TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                paths.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return paths;
+    }
+
+    // Original methods
+
+    /**
+     * To get the hash of the original stored for the url and mark it used
+     * @param url url of the image
+     * @param time current time, stored as the last use of the original
+     * @return hash of the content, null if it is not stored
+     */
+    public String fetchOriginalHash(String url, long time) {
+        SQLiteDatabase db = getWritableDatabase();
+        String hash;
+
+        Cursor cursor = db.rawQuery("SELECT " + KEY_HASH + " FROM " + ORIGINAL_TABLE_NAME +
+                " WHERE " + KEY_URL + " = ?", new String[]{url});
+        try {
+            hash = cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+
+        // Recently used originals are the last to be evicted
+        if (hash != null) {
+            ContentValues values = new ContentValues();
+            values.put(KEY_LAST_USED, time);
+            db.update(ORIGINAL_TABLE_NAME, values, KEY_URL + " = ?", new String[]{url});
+        }
+        return hash;
+    }
+
+    /**
+     * To store the original of the url, replacing the one stored for the same url
+     * @param url url of the image
+     * @param hash hash of the content, the name of its file
+     * @param size size of the content in bytes
+     * @param time current time, stored as the last use of the original
+     */
+    public void saveOriginal(String url, String hash, long size, long time) {
+        ContentValues values = new ContentValues();
+        values.put(KEY_URL, url);
+        values.put(KEY_HASH, hash);
+        values.put(KEY_SIZE, size);
+        values.put(KEY_LAST_USED, time);
+
+        getWritableDatabase().insertWithOnConflict(ORIGINAL_TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * To remove the originals of the url
+     * @param url url of the image
+     */
+    public void deleteOriginal(String url) {
+        getWritableDatabase().delete(ORIGINAL_TABLE_NAME, KEY_URL + " = ?", new String[]{url});
+    }
+
+    /**
+     * To remove the least recently used originals till the stored contents fit the budget
+     * Originals of the items are pinned, they are never removed
+     * @param budgetBytes size the contents may take in bytes
+     * @param keepUrl url whose original is not removed, the one just stored
+     * @return hashes of the contents no url refers to anymore, their files are to be deleted
+     */
+    public List<String> deleteOriginalsOverBudget(long budgetBytes, String keepUrl) {
+        SQLiteDatabase db = getWritableDatabase();
+        List<String> freedHashes = new ArrayList<>();
+
+        db.beginTransaction();
+        try {
+            // Every content is counted once, however many urls share it
+            long total = DatabaseUtils.longForQuery(db, "SELECT IFNULL(SUM(" + KEY_SIZE + "), 0) FROM (" +
+                    "SELECT MAX(" + KEY_SIZE + ") AS " + KEY_SIZE + " FROM " + ORIGINAL_TABLE_NAME +
+                    " GROUP BY " + KEY_HASH + ")", null);
+
+            if (total > budgetBytes) {
+                Cursor cursor = db.rawQuery("SELECT " + KEY_URL + ", " + KEY_HASH + ", " + KEY_SIZE +
+                        " FROM " + ORIGINAL_TABLE_NAME +
+                        " WHERE " + KEY_URL + " != ? AND " + KEY_URL + " NOT IN (SELECT " + KEY_IMAGE_URL + " FROM " + TABLE_NAME + ")" +
+                        " ORDER BY " + KEY_LAST_USED, new String[]{keepUrl});
+                try {
+                    while (total > budgetBytes && cursor.moveToNext()) {
+                        String hash = cursor.getString(1);
+                        db.delete(ORIGINAL_TABLE_NAME, KEY_URL + " = ?", new String[]{cursor.getString(0)});
+
+                        // Content still shared by another url stays
+                        if (DatabaseUtils.queryNumEntries(db, ORIGINAL_TABLE_NAME, KEY_HASH + " = ?", new String[]{hash}) == 0) {
+                            total -= cursor.getLong(2);
+                            freedHashes.add(hash);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return freedHashes;
+    }
+
+    /**
+     * To get the hashes of all the originals stored
+     * @return hashes, the names of the files to be kept
+     */
+    public Set<String> fetchOriginalHashes() {
+        Set<String> hashes = new HashSet<>();
+        Cursor cursor = getReadableDatabase().rawQuery("SELECT DISTINCT " + KEY_HASH + " FROM " + ORIGINAL_TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                hashes.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return hashes;
+    }
+
+    /**
+     * To bind the data of the item to the first parameters of the statement
+     * @param statement statement to which the data is to be bind
+     * @param item item having the data
+     */
+    private void bindItem(SQLiteStatement statement, Item item) {
+        statement.bindString(1, item.label);
+        statement.bindLong(2, item.color);
+        statement.bindString(3, item.url);
+        statement.bindLong(4, item.position);
     }
 }
@@ -0,0 +1,32 @@
+package com.streamliners.galleryapp.models;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Represents the colors and labels found in an image by the machine learning model
+ */
+public class ImageAnalysis {
+    // Url of the image analysed
+    public final String url;
+    // Hash of the image content, same content gives the same hash
+    public final String hash;
+    // Major colors in the image
+    public final Set<Integer> colors;
+    // Labels of the image
+    public final List<String> labels;
+
+    /**
+     * To construct the object with...
+     * @param url url of the image analysed
+     * @param hash hash of the image content
+     * @param colors major colors in the image
+     * @param labels labels of the image
+     */
+    public ImageAnalysis(String url, String hash, Set<Integer> colors, List<String> labels) {
+        this.url = url;
+        this.hash = hash;
+        this.colors = colors;
+        this.labels = labels;
+    }
+}
@@ -4,12 +4,18 @@ package com.streamliners.galleryapp.models;
  * Represents the item for the gallery activity
  */
 public class Item {
+    // Id of the row in the database (-1 until the item is tracked)
+    public long id = -1;
+    // Position of the item in the list, items are kept sorted by it
+    public long position;
     // Url of the image
     public String url;
     // Background color of the text field
     public int color;
     // Label of the image
     public String label;
+    // Copy of the image kept on the device, null until it is made
+    public Thumbnail thumbnail;
 
     /**
      * To construct the object with...
@@ -22,4 +28,16 @@ public class Item {
         this.color = color;
         this.label = label;
     }
+
+    /**
+     * To construct the object already stored in the database
+     * @param id id of the row in the database
+     * @param url url of the image received
+     * @param color color chose
+     * @param label label chose
+     */
+    public Item(long id, String url, int color, String label) {
+        this(url, color, label);
+        this.id = id;
+    }
 }
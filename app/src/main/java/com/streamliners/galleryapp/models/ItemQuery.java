@@ -0,0 +1,137 @@
+package com.streamliners.galleryapp.models;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Represents the query for the items shown in the list
+ */
+public class ItemQuery {
+    // Query showing all the items in their positions
+    public static final ItemQuery ALL = new ItemQuery("", false);
+
+    // Text to be searched in the labels, empty for all the items
+    public final String searchText;
+    // To order the items by their labels instead of their positions
+    public final boolean isSortedByLabel;
+
+    /**
+     * To construct the object with...
+     * @param searchText text to be searched in the labels
+     * @param isSortedByLabel whether the items are ordered by their labels
+     */
+    public ItemQuery(String searchText, boolean isSortedByLabel) {
+        this.searchText = searchText;
+        this.isSortedByLabel = isSortedByLabel;
+    }
+
+    /**
+     * To check whether the query shows all the items in their positions
+     * @return true if nothing is searched or sorted
+     */
+    public boolean isAllItems() {
+        return searchText.isEmpty() && !isSortedByLabel;
+    }
+
+    /**
+     * To check whether the query can only match the items matched by the other query
+     * Typing more text can only remove the items, never add, and the order does not matter
+     * @param query previous query
+     * @return true if the items of this query are among the items of the other
+     */
+    public boolean isNarrowerThan(ItemQuery query) {
+        return searchText.startsWith(query.searchText);
+    }
+
+    /**
+     * To check whether the item matches the query, the same way the label index does
+     * Every word of the text has to be the prefix of a word in the label
+     * @param item item to be checked
+     * @return true if the item is to be shown
+     */
+    public boolean matches(Item item) {
+        if (searchText.isEmpty()) {
+            return true;
+        }
+
+        List<String> tokens = tokenize(searchText);
+        if (tokens.isEmpty()) {
+            return false;
+        }
+
+        List<String> labelTokens = tokenize(item.label);
+        for (String token : tokens) {
+            boolean isFound = false;
+            for (String labelToken : labelTokens) {
+                if (labelToken.startsWith(token)) {
+                    isFound = true;
+                    break;
+                }
+            }
+            if (!isFound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * To get the order of the items, the same as the database gives
+     * @return comparator for the items
+     */
+    public Comparator<Item> getComparator() {
+        if (isSortedByLabel) {
+            return (o1, o2) -> {
+                int result = o1.label.compareTo(o2.label);
+                return result != 0 ? result : Long.compare(o1.position, o2.position);
+            };
+        }
+        if (searchText.isEmpty()) {
+            return (o1, o2) -> Long.compare(o1.position, o2.position);
+        }
+
+        // Ranked by relevance: exact labels, then labels starting with the text, then shorter labels
+        return (o1, o2) -> {
+            int result = Integer.compare(rank(o1), rank(o2));
+            if (result == 0) {
+                result = Integer.compare(o1.label.length(), o2.label.length());
+            }
+            return result != 0 ? result : Long.compare(o1.position, o2.position);
+        };
+    }
+
+    /**
+     * To get the relevance rank of the item, lower is more relevant
+     * @param item item to be ranked
+     * @return 0 for the exact label, 1 for the label starting with the text, 2 otherwise
+     */
+    private int rank(Item item) {
+        if (item.label.equalsIgnoreCase(searchText)) {
+            return 0;
+        }
+        return item.label.regionMatches(true, 0, searchText, 0, searchText.length()) ? 1 : 2;
+    }
+
+    /**
+     * To split the text into the words searched by the label index
+     * Words are lower cased and their accents are removed
+     * @param text text to be split
+     * @return list of the words
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .toLowerCase(Locale.ROOT);
+
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
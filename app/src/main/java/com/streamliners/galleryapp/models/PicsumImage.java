@@ -0,0 +1,50 @@
+package com.streamliners.galleryapp.models;
+
+import com.streamliners.galleryapp.helpers.CancellationToken;
+
+/**
+ * Represents a random image of picsum, loaded through Glide
+ * The url redirects to a different image every time, the one loaded is known only after loading
+ */
+public class PicsumImage {
+    // Url redirecting to the random image
+    public final String sourceUrl;
+    // Cancellation of the load, honored while resolving the redirect
+    public final CancellationToken token;
+    // Url of the image loaded, set by Glide's worker once the redirect is resolved
+    private volatile String resolvedUrl;
+
+    /**
+     * To construct the object with...
+     * @param sourceUrl url redirecting to the random image
+     */
+    public PicsumImage(String sourceUrl) {
+        this(sourceUrl, new CancellationToken());
+    }
+
+    /**
+     * To construct the object with...
+     * @param sourceUrl url redirecting to the random image
+     * @param token cancellation of the load
+     */
+    public PicsumImage(String sourceUrl, CancellationToken token) {
+        this.sourceUrl = sourceUrl;
+        this.token = token;
+    }
+
+    /**
+     * To get the url of the image loaded
+     * @return url the source redirected to, null until it is resolved
+     */
+    public String getResolvedUrl() {
+        return resolvedUrl;
+    }
+
+    /**
+     * To set the url the source redirected to
+     * @param resolvedUrl url of the image loaded
+     */
+    public void setResolvedUrl(String resolvedUrl) {
+        this.resolvedUrl = resolvedUrl;
+    }
+}
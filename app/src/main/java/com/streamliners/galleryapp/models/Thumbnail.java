@@ -0,0 +1,40 @@
+package com.streamliners.galleryapp.models;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Represents the small copy of an image kept on the device for the list
+ * Made off the main thread, when its row is read or the thumbnail is made
+ */
+public class Thumbnail {
+    // Path of the stored copy
+    public final String path;
+    // Width of the stored copy
+    public final int width;
+    // To check whether the image was stored without scaling it down, then it is as sharp as the image
+    public final boolean isFullSize;
+    // Width of the image divided by its height
+    public final float aspectRatio;
+    // Tiny copy of the image in jpeg format, shown blurred till the stored copy is loaded
+    public final byte[] placeholder;
+    // Placeholder decoded once, so binding a card only draws it, null if it cannot be decoded
+    public final Bitmap placeholderBitmap;
+
+    /**
+     * To construct the object with...
+     * @param path path of the stored copy
+     * @param width width of the stored copy
+     * @param isFullSize true if the image was stored without scaling it down
+     * @param aspectRatio width of the image divided by its height
+     * @param placeholder tiny copy of the image in jpeg format
+     */
+    public Thumbnail(String path, int width, boolean isFullSize, float aspectRatio, byte[] placeholder) {
+        this.path = path;
+        this.width = width;
+        this.isFullSize = isFullSize;
+        this.aspectRatio = aspectRatio;
+        this.placeholder = placeholder;
+        this.placeholderBitmap = BitmapFactory.decodeByteArray(placeholder, 0, placeholder.length);
+    }
+}
@@ -0,0 +1,42 @@
+package com.streamliners.galleryapp.helpers;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for reading the dimensions of the batch
+ */
+public class BatchIngestHelperTest {
+    @Test
+    public void parseSizes_readsRectanglesAndSquares() {
+        List<int[]> sizes = BatchIngestHelper.parseSizes(" 400x300, 500 ,200 X 100,");
+
+        assertEquals(3, sizes.size());
+        assertArrayEquals(new int[]{400, 300}, sizes.get(0));
+        assertArrayEquals(new int[]{500, 500}, sizes.get(1));
+        assertArrayEquals(new int[]{200, 100}, sizes.get(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSizes_rejectsEmptyText() {
+        BatchIngestHelper.parseSizes(" , ");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSizes_rejectsInvalidDimensions() {
+        BatchIngestHelper.parseSizes("400x0");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSizes_rejectsMissingSide() {
+        BatchIngestHelper.parseSizes("400x");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseSizes_rejectsText() {
+        BatchIngestHelper.parseSizes("large");
+    }
+}
@@ -0,0 +1,95 @@
+package com.streamliners.galleryapp.helpers;
+
+import android.content.ComponentCallbacks2;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for trimming the caches in the order of their priority
+ */
+public class CacheCoordinatorTest {
+    @Test
+    public void trim_goesByPriorityAndCountsReclaimedBytes() {
+        List<String> trimmed = new ArrayList<>();
+        CacheCoordinator coordinator = new CacheCoordinator();
+        coordinator.register(CacheCoordinator.PRIORITY_DECODED, new FakeCache("decoded", 300, trimmed));
+        coordinator.register(CacheCoordinator.PRIORITY_PREFETCHED, new FakeCache("prefetched", 100, trimmed));
+        coordinator.register(CacheCoordinator.PRIORITY_LOOKUPS, new FakeCache("lookups", 20, trimmed));
+
+        long reclaimed = coordinator.trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertEquals(420, reclaimed);
+        assertEquals(0, coordinator.getSizeBytes());
+        assertEquals(3, trimmed.size());
+        assertEquals("prefetched", trimmed.get(0));
+        assertEquals("lookups", trimmed.get(1));
+        assertEquals("decoded", trimmed.get(2));
+    }
+
+    @Test
+    public void trim_leavesPrioritiesTheLevelDoesNotReach() {
+        List<String> trimmed = new ArrayList<>();
+        CacheCoordinator coordinator = new CacheCoordinator();
+        coordinator.register(CacheCoordinator.PRIORITY_PREFETCHED, new FakeCache("prefetched", 100, trimmed));
+        coordinator.register(CacheCoordinator.PRIORITY_MODELS, new FakeCache("models", 500, trimmed));
+
+        long reclaimed = coordinator.trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW);
+
+        assertEquals(100, reclaimed);
+        assertEquals(500, coordinator.getSizeBytes());
+        assertEquals(1, trimmed.size());
+    }
+
+    @Test
+    public void trim_keepsTheModelsWhenTheAppIsOnlyHidden() {
+        List<String> trimmed = new ArrayList<>();
+        CacheCoordinator coordinator = new CacheCoordinator();
+        coordinator.register(CacheCoordinator.PRIORITY_MODELS, new FakeCache("models", 500, trimmed));
+
+        assertEquals(0, coordinator.trim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN));
+        assertEquals(500, coordinator.trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND));
+    }
+
+    @Test
+    public void unregister_removesTheCache() {
+        List<String> trimmed = new ArrayList<>();
+        CacheCoordinator coordinator = new CacheCoordinator();
+        FakeCache cache = new FakeCache("prefetched", 100, trimmed);
+        coordinator.register(CacheCoordinator.PRIORITY_PREFETCHED, cache);
+        coordinator.unregister(cache);
+
+        assertEquals(0, coordinator.trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE));
+        assertTrue(trimmed.isEmpty());
+    }
+
+    /**
+     * Cache emptied by every trim, noting the order of the trims
+     */
+    private static class FakeCache implements CacheCoordinator.TrimmableCache {
+        private final String mName;
+        private final List<String> mTrimmed;
+        private long mSize;
+
+        FakeCache(String name, long size, List<String> trimmed) {
+            this.mName = name;
+            this.mSize = size;
+            this.mTrimmed = trimmed;
+        }
+
+        @Override
+        public long getSizeBytes() {
+            return mSize;
+        }
+
+        @Override
+        public void trim(int level) {
+            mTrimmed.add(mName);
+            mSize = 0;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.streamliners.galleryapp.helpers;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the redirect resolution, against a stand-in server on the loopback
+ */
+public class RedirectedUrlHelperTest {
+    // Stand-in server
+    private HttpServer server;
+    // Methods of the requests received
+    private final List<String> methods = Collections.synchronizedList(new ArrayList<>());
+    // Number of the requests to fail before answering
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+
+        // Random redirect, not to be reused
+        server.createContext("/random", exchange -> {
+            methods.add(exchange.getRequestMethod());
+            exchange.getResponseHeaders().add("Location", "/id/" + methods.size());
+            exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+        });
+        // Permanent redirect
+        server.createContext("/moved", exchange -> {
+            methods.add(exchange.getRequestMethod());
+            exchange.getResponseHeaders().add("Location", "/id/7");
+            exchange.sendResponseHeaders(301, -1);
+            exchange.close();
+        });
+        // Redirect answered only after some server errors
+        server.createContext("/flaky", exchange -> {
+            methods.add(exchange.getRequestMethod());
+            if (failuresLeft.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+            } else {
+                exchange.getResponseHeaders().add("Location", "/id/9");
+                exchange.sendResponseHeaders(302, -1);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void getRedirectUrl_resolvesWithHead() throws IOException {
+        RedirectedUrlHelper helper = newHelper(0);
+
+        assertEquals(url("/id/1"), helper.getRedirectUrl(url("/random")));
+        assertEquals(Collections.singletonList("HEAD"), methods);
+    }
+
+    @Test
+    public void getRedirectUrl_cachesOnlyReusableRedirects() throws IOException {
+        RedirectedUrlHelper helper = newHelper(0);
+
+        assertEquals(url("/id/7"), helper.getRedirectUrl(url("/moved")));
+        assertEquals(url("/id/7"), helper.getRedirectUrl(url("/moved")));
+        assertEquals(1, methods.size());
+
+        assertEquals(url("/id/2"), helper.getRedirectUrl(url("/random")));
+        assertEquals(url("/id/3"), helper.getRedirectUrl(url("/random")));
+        assertEquals(3, methods.size());
+    }
+
+    @Test
+    public void getRedirectUrl_retriesServerErrors() throws IOException {
+        failuresLeft.set(2);
+
+        assertEquals(url("/id/9"), newHelper(2).getRedirectUrl(url("/flaky")));
+        assertEquals(3, methods.size());
+    }
+
+    @Test
+    public void getRedirectUrl_givesUpAfterRetries() {
+        failuresLeft.set(5);
+
+        try {
+            newHelper(1).getRedirectUrl(url("/flaky"));
+            fail("Server error is expected");
+        } catch (IOException e) {
+            assertEquals(2, methods.size());
+        }
+    }
+
+    @Test
+    public void getRedirectUrl_stopsWhenCancelled() {
+        failuresLeft.set(5);
+        CancellationToken token = new CancellationToken();
+        // Cancelled while waiting before the first retry, which would take a minute
+        RedirectedUrlHelper helper = new RedirectedUrlHelper(1000, 1000, 3, 60_000, 10);
+        new Thread(() -> {
+            while (methods.isEmpty()) {
+                Thread.yield();
+            }
+            token.cancel();
+        }).start();
+
+        long startTime = System.currentTimeMillis();
+        try {
+            helper.getRedirectUrl(url("/flaky"), token);
+            fail("Cancellation is expected");
+        } catch (InterruptedIOException e) {
+            assertEquals(1, methods.size());
+            assertTrue(System.currentTimeMillis() - startTime < 10_000);
+        } catch (IOException e) {
+            fail(e.toString());
+        }
+    }
+
+    @Test
+    public void getMaxAgeMillis_followsCacheControl() {
+        assertEquals(0, RedirectedUrlHelper.getMaxAgeMillis(302, null));
+        assertEquals(0, RedirectedUrlHelper.getMaxAgeMillis(301, "no-store"));
+        assertEquals(60_000, RedirectedUrlHelper.getMaxAgeMillis(302, "public, max-age=60"));
+        assertEquals(Long.MAX_VALUE, RedirectedUrlHelper.getMaxAgeMillis(301, null));
+    }
+
+    private RedirectedUrlHelper newHelper(int maxRetries) {
+        return new RedirectedUrlHelper(1000, 1000, maxRetries, 1, 10);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+}
@@ -0,0 +1,65 @@
+package com.streamliners.galleryapp.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the search query of the items
+ */
+public class ItemQueryTest {
+    @Test
+    public void tokenize_lowerCasesAndRemovesAccents() {
+        assertEquals(Arrays.asList("cafe", "creme", "42"), ItemQuery.tokenize("  Café-CRÈME, 42!"));
+    }
+
+    @Test
+    public void matches_everyWordIsPrefixOfLabelWord() {
+        Item item = new Item("url", 0, "Golden Retriever");
+
+        assertTrue(new ItemQuery("gol", false).matches(item));
+        assertTrue(new ItemQuery("ret gold", false).matches(item));
+        assertFalse(new ItemQuery("olden", false).matches(item));
+        assertFalse(new ItemQuery("gol cat", false).matches(item));
+        assertFalse(new ItemQuery("!!", false).matches(item));
+    }
+
+    @Test
+    public void isNarrowerThan_onlyWhenTextExtended() {
+        ItemQuery query = new ItemQuery("ca", false);
+
+        assertTrue(new ItemQuery("cat", false).isNarrowerThan(query));
+        assertTrue(new ItemQuery("ca d", false).isNarrowerThan(query));
+        assertTrue(new ItemQuery("ca", true).isNarrowerThan(query));
+        assertTrue(new ItemQuery("cat", false).isNarrowerThan(ItemQuery.ALL));
+        assertFalse(new ItemQuery("c", false).isNarrowerThan(query));
+        assertFalse(ItemQuery.ALL.isNarrowerThan(query));
+    }
+
+    @Test
+    public void comparator_ranksByRelevance() {
+        List<Item> items = new ArrayList<>(Arrays.asList(
+                item("Wild cat", 1),
+                item("Cathedral", 2),
+                item("Cat", 3),
+                item("Cats", 4)));
+
+        Collections.sort(items, new ItemQuery("cat", false).getComparator());
+
+        assertEquals("Cat", items.get(0).label);
+        assertEquals("Cats", items.get(1).label);
+        assertEquals("Cathedral", items.get(2).label);
+        assertEquals("Wild cat", items.get(3).label);
+    }
+
+    private static Item item(String label, long position) {
+        Item item = new Item("url", 0, label);
+        item.position = position;
+        return item;
+    }
+}
@@ -0,0 +1,89 @@
+package com.streamliners.colorextractor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the color extraction, run with the gc profiler to compare the allocation rates
+ * The palette itself needs the Android framework, so its way of working is reproduced here:
+ * new scratch memory for every image and the colors boxed into a set
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DominantColorExtractorBenchmark {
+    // Side of the image, 112 is the area the palette scales down to, 512 the analysis size of the app
+    @Param({"112", "512"})
+    public int side;
+
+    // Pixels of the image
+    private int[] pixels;
+    // Extractor reused for every image
+    private final DominantColorExtractor extractor = new DominantColorExtractor();
+    // Colors extracted
+    private final int[] colors = new int[DominantColorExtractor.CATEGORY_COUNT];
+
+    @Setup
+    public void setup() {
+        pixels = createImage(side, new Random(42));
+    }
+
+    @Benchmark
+    public int[] reusedExtractor() {
+        extractor.extract(pixels, 0, pixels.length, colors);
+        return colors;
+    }
+
+    @Benchmark
+    public int[] extractorPerImage() {
+        new DominantColorExtractor().extract(pixels, 0, pixels.length, colors);
+        return colors;
+    }
+
+    @Benchmark
+    public Set<Integer> boxedColorsPerImage() {
+        int[] out = new int[DominantColorExtractor.CATEGORY_COUNT];
+        new DominantColorExtractor().extract(pixels, 0, pixels.length, out);
+
+        Set<Integer> result = new HashSet<>();
+        for (int color : out) {
+            result.add(color);
+        }
+        result.remove(DominantColorExtractor.NO_COLOR);
+        return result;
+    }
+
+    /**
+     * To create an image of smooth gradients with some noise, closer to a photo than pure noise
+     * @param side side of the square image
+     * @param random source of the noise
+     * @return pixels in ARGB format
+     */
+    static int[] createImage(int side, Random random) {
+        int[] pixels = new int[side * side];
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                int red = clamp(255 * x / side + random.nextInt(32) - 16);
+                int green = clamp(255 * y / side + random.nextInt(32) - 16);
+                int blue = clamp(255 - 255 * (x + y) / (2 * side) + random.nextInt(32) - 16);
+                pixels[y * side + x] = 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        }
+        return pixels;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
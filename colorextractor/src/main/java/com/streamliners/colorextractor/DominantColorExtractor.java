@@ -0,0 +1,517 @@
+package com.streamliners.colorextractor;
+
+import java.util.Arrays;
+
+/**
+ * Finds the vibrant and muted colors of an image from its pixels
+ * Works like the AndroidX palette, colors are quantized to 5 bits per channel and
+ * split by the median cut, then the best box is chosen for every swatch category
+ * The scratch arrays are allocated once, so an instance is to be used by one thread at a time
+ */
+public class DominantColorExtractor {
+    // Categories of the swatches, indexes in the array of the extracted colors
+    public static final int LIGHT_VIBRANT = 0;
+    public static final int VIBRANT = 1;
+    public static final int DARK_VIBRANT = 2;
+    public static final int LIGHT_MUTED = 3;
+    public static final int MUTED = 4;
+    public static final int DARK_MUTED = 5;
+    // Number of the swatch categories
+    public static final int CATEGORY_COUNT = 6;
+    // Color given to the categories having no swatch, real colors are opaque
+    public static final int NO_COLOR = 0;
+
+    // Maximum number of the boxes the colors are split into, same as the palette
+    public static final int DEFAULT_MAX_COLORS = 16;
+
+    // Bits kept for every channel after quantizing
+    private static final int QUANTIZE_WORD_WIDTH = 5;
+    private static final int QUANTIZE_WORD_MASK = (1 << QUANTIZE_WORD_WIDTH) - 1;
+    private static final int HISTOGRAM_SIZE = 1 << (QUANTIZE_WORD_WIDTH * 3);
+
+    // Dimensions of the color space, for the boxes
+    private static final int COMPONENT_RED = 0;
+    private static final int COMPONENT_GREEN = 1;
+    private static final int COMPONENT_BLUE = 2;
+
+    // Lightness and saturation of the categories as {minimum, target, maximum}
+    private static final float[] LIGHT_LIGHTNESS = {0.55f, 0.74f, 1f};
+    private static final float[] NORMAL_LIGHTNESS = {0.3f, 0.5f, 0.7f};
+    private static final float[] DARK_LIGHTNESS = {0f, 0.26f, 0.45f};
+    private static final float[] VIBRANT_SATURATION = {0.35f, 1f, 1f};
+    private static final float[] MUTED_SATURATION = {0f, 0.3f, 0.4f};
+    // Weights of the score of a swatch for a category
+    private static final float WEIGHT_SATURATION = 0.24f;
+    private static final float WEIGHT_LIGHTNESS = 0.52f;
+    private static final float WEIGHT_POPULATION = 0.24f;
+
+    // Whether the palette's default filter lets every quantized color through, computed once
+    private static final boolean[] ALLOWED_COLORS = new boolean[HISTOGRAM_SIZE];
+
+    static {
+        float[] hsl = new float[3];
+        for (int color = 0; color < HISTOGRAM_SIZE; color++) {
+            ALLOWED_COLORS[color] = isAllowed(approximateToRgb888(color), hsl);
+        }
+    }
+
+    // Maximum number of the boxes
+    private final int mMaxColors;
+
+    // Population of every quantized color
+    private final int[] mHistogram = new int[HISTOGRAM_SIZE];
+    // Distinct quantized colors, the boxes are ranges of this array
+    private final int[] mColors = new int[HISTOGRAM_SIZE];
+    // Population of the values of one component inside a box, to find its median
+    private final int[] mComponentHistogram = new int[1 << QUANTIZE_WORD_WIDTH];
+
+    // Boxes as ranges of the distinct colors
+    private final int[] mBoxLower;
+    private final int[] mBoxUpper;
+    // Smallest and largest value of every dimension in the boxes, three per box
+    private final int[] mBoxMin;
+    private final int[] mBoxMax;
+    private int mBoxCount;
+
+    // Swatches found, one for every box
+    private final int[] mSwatchRgb;
+    private final int[] mSwatchPopulation;
+    private final float[] mSwatchSaturation;
+    private final float[] mSwatchLightness;
+    private final boolean[] mSwatchUsed;
+    private int mSwatchCount;
+
+    // Hue, saturation and lightness of the color being checked
+    private final float[] mHsl = new float[3];
+
+    /**
+     * To construct the extractor with the same number of the boxes as the palette
+     */
+    public DominantColorExtractor() {
+        this(DEFAULT_MAX_COLORS);
+    }
+
+    /**
+     * To construct the extractor with...
+     * @param maxColors maximum number of the boxes the colors are split into
+     */
+    public DominantColorExtractor(int maxColors) {
+        // Guard Code
+        if (maxColors < 1) {
+            throw new IllegalArgumentException("maxColors must be at least 1");
+        }
+
+        this.mMaxColors = maxColors;
+        mBoxLower = new int[maxColors];
+        mBoxUpper = new int[maxColors];
+        mBoxMin = new int[maxColors * 3];
+        mBoxMax = new int[maxColors * 3];
+        mSwatchRgb = new int[maxColors];
+        mSwatchPopulation = new int[maxColors];
+        mSwatchSaturation = new float[maxColors];
+        mSwatchLightness = new float[maxColors];
+        mSwatchUsed = new boolean[maxColors];
+    }
+
+    /**
+     * To find the color of every swatch category in the pixels
+     * Nothing is allocated, the pixels are only read
+     * @param pixels pixels in ARGB format
+     * @param offset index of the first pixel
+     * @param length number of the pixels
+     * @param out array receiving the colors, indexed by the categories, {@link #NO_COLOR} if missing
+     * @return number of the categories having a color
+     */
+    public int extract(int[] pixels, int offset, int length, int[] out) {
+        // Guard Code
+        if (out.length < CATEGORY_COUNT) {
+            throw new IllegalArgumentException("out must have " + CATEGORY_COUNT + " elements");
+        }
+
+        buildHistogram(pixels, offset, length);
+        int colorCount = collectColors();
+        findSwatches(colorCount);
+
+        Arrays.fill(mSwatchUsed, false);
+        int found = 0;
+        found += selectSwatch(LIGHT_LIGHTNESS, VIBRANT_SATURATION, LIGHT_VIBRANT, out);
+        found += selectSwatch(NORMAL_LIGHTNESS, VIBRANT_SATURATION, VIBRANT, out);
+        found += selectSwatch(DARK_LIGHTNESS, VIBRANT_SATURATION, DARK_VIBRANT, out);
+        found += selectSwatch(LIGHT_LIGHTNESS, MUTED_SATURATION, LIGHT_MUTED, out);
+        found += selectSwatch(NORMAL_LIGHTNESS, MUTED_SATURATION, MUTED, out);
+        found += selectSwatch(DARK_LIGHTNESS, MUTED_SATURATION, DARK_MUTED, out);
+        return found;
+    }
+
+    // Quantizing methods
+
+    /**
+     * To count the pixels of every quantized color
+     */
+    private void buildHistogram(int[] pixels, int offset, int length) {
+        Arrays.fill(mHistogram, 0);
+        for (int i = offset; i < offset + length; i++) {
+            mHistogram[quantize(pixels[i])]++;
+        }
+    }
+
+    /**
+     * To collect the distinct quantized colors, leaving out the ones the palette filters
+     * @return number of the distinct colors
+     */
+    private int collectColors() {
+        int count = 0;
+        for (int color = 0; color < HISTOGRAM_SIZE; color++) {
+            if (mHistogram[color] > 0 && ALLOWED_COLORS[color]) {
+                mColors[count++] = color;
+            } else {
+                mHistogram[color] = 0;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * To split the colors into boxes and average every box into a swatch
+     * @param colorCount number of the distinct colors
+     */
+    private void findSwatches(int colorCount) {
+        mSwatchCount = 0;
+
+        // Guard Code
+        if (colorCount == 0) {
+            return;
+        }
+
+        // Few enough colors, every one is a swatch
+        if (colorCount <= mMaxColors) {
+            for (int i = 0; i < colorCount; i++) {
+                addSwatch(approximateToRgb888(mColors[i]), mHistogram[mColors[i]]);
+            }
+            return;
+        }
+
+        // Median cut, always splitting the box having the largest volume
+        mBoxLower[0] = 0;
+        mBoxUpper[0] = colorCount - 1;
+        fitBox(0);
+        mBoxCount = 1;
+        while (mBoxCount < mMaxColors) {
+            int box = findLargestBox();
+            if (box < 0) {
+                break;
+            }
+            splitBox(box);
+        }
+
+        for (int box = 0; box < mBoxCount; box++) {
+            averageBox(box);
+        }
+    }
+
+    /**
+     * To find the box having the largest volume among the ones which can be split
+     * @return index of the box, -1 if no box can be split
+     */
+    private int findLargestBox() {
+        int largest = -1;
+        int largestVolume = 0;
+        for (int box = 0; box < mBoxCount; box++) {
+            if (mBoxUpper[box] == mBoxLower[box]) {
+                continue;
+            }
+
+            int volume = 1;
+            for (int component = COMPONENT_RED; component <= COMPONENT_BLUE; component++) {
+                volume *= getRange(box, component);
+            }
+            if (volume > largestVolume) {
+                largestVolume = volume;
+                largest = box;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * To split the box at the median of its longest dimension, the new box is added at the end
+     * @param box index of the box to be split
+     */
+    private void splitBox(int box) {
+        int lower = mBoxLower[box];
+        int upper = mBoxUpper[box];
+
+        // Longest dimension, ties go to red then green as in the palette
+        int component = COMPONENT_RED;
+        int longest = getRange(box, COMPONENT_RED);
+        for (int next = COMPONENT_GREEN; next <= COMPONENT_BLUE; next++) {
+            int range = getRange(box, next);
+            if (range > longest) {
+                longest = range;
+                component = next;
+            }
+        }
+
+        // Population of every value of the dimension
+        Arrays.fill(mComponentHistogram, 0);
+        int population = 0;
+        for (int i = lower; i <= upper; i++) {
+            mComponentHistogram[getComponent(mColors[i], component)] += mHistogram[mColors[i]];
+            population += mHistogram[mColors[i]];
+        }
+        int min = mBoxMin[box * 3 + component];
+        int max = mBoxMax[box * 3 + component];
+
+        // Median value, kept below the maximum so that both the boxes get a color
+        int median = min;
+        int count = 0;
+        for (int value = min; value <= max; value++) {
+            count += mComponentHistogram[value];
+            if (count >= population / 2) {
+                median = value;
+                break;
+            }
+        }
+        median = Math.min(median, max - 1);
+
+        // Partitioning in place, colors up to the median go in the first box
+        int left = lower;
+        int right = upper;
+        while (left <= right) {
+            if (getComponent(mColors[left], component) <= median) {
+                left++;
+            } else {
+                int temp = mColors[left];
+                mColors[left] = mColors[right];
+                mColors[right] = temp;
+                right--;
+            }
+        }
+
+        mBoxUpper[box] = left - 1;
+        mBoxLower[mBoxCount] = left;
+        mBoxUpper[mBoxCount] = upper;
+        fitBox(box);
+        fitBox(mBoxCount);
+        mBoxCount++;
+    }
+
+    /**
+     * To shrink the bounds of the box to the colors inside it
+     * @param box index of the box
+     */
+    private void fitBox(int box) {
+        for (int component = COMPONENT_RED; component <= COMPONENT_BLUE; component++) {
+            mBoxMin[box * 3 + component] = QUANTIZE_WORD_MASK;
+            mBoxMax[box * 3 + component] = 0;
+        }
+        for (int i = mBoxLower[box]; i <= mBoxUpper[box]; i++) {
+            for (int component = COMPONENT_RED; component <= COMPONENT_BLUE; component++) {
+                int value = getComponent(mColors[i], component);
+                mBoxMin[box * 3 + component] = Math.min(mBoxMin[box * 3 + component], value);
+                mBoxMax[box * 3 + component] = Math.max(mBoxMax[box * 3 + component], value);
+            }
+        }
+    }
+
+    /**
+     * To get the number of the values a dimension of the box spans
+     * @param box index of the box
+     * @param component dimension of the color space
+     * @return maximum minus minimum plus one
+     */
+    private int getRange(int box, int component) {
+        return mBoxMax[box * 3 + component] - mBoxMin[box * 3 + component] + 1;
+    }
+
+    /**
+     * To average the colors of the box, weighted by their population, into a swatch
+     * @param box index of the box
+     */
+    private void averageBox(int box) {
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        int population = 0;
+        for (int i = mBoxLower[box]; i <= mBoxUpper[box]; i++) {
+            int color = mColors[i];
+            int colorPopulation = mHistogram[color];
+            red += (long) getComponent(color, COMPONENT_RED) * colorPopulation;
+            green += (long) getComponent(color, COMPONENT_GREEN) * colorPopulation;
+            blue += (long) getComponent(color, COMPONENT_BLUE) * colorPopulation;
+            population += colorPopulation;
+        }
+
+        int rgb = approximateToRgb888(
+                Math.round(red / (float) population),
+                Math.round(green / (float) population),
+                Math.round(blue / (float) population));
+
+        // Averages can land on a filtered color again
+        if (isAllowed(rgb, mHsl)) {
+            addSwatch(rgb, population);
+        }
+    }
+
+    /**
+     * To add the swatch and keep its saturation and lightness for the scoring
+     * @param rgb color of the swatch
+     * @param population number of the pixels of the swatch
+     */
+    private void addSwatch(int rgb, int population) {
+        colorToHsl(rgb, mHsl);
+        mSwatchRgb[mSwatchCount] = rgb;
+        mSwatchPopulation[mSwatchCount] = population;
+        mSwatchSaturation[mSwatchCount] = mHsl[1];
+        mSwatchLightness[mSwatchCount] = mHsl[2];
+        mSwatchCount++;
+    }
+
+    // Selecting methods
+
+    /**
+     * To pick the swatch scoring best for the category, a swatch is used by one category only
+     * @param lightness lightness of the category
+     * @param saturation saturation of the category
+     * @param category index of the category in the output
+     * @param out array receiving the colors
+     * @return 1 if a swatch is picked otherwise 0
+     */
+    private int selectSwatch(float[] lightness, float[] saturation, int category, int[] out) {
+        int maxPopulation = 0;
+        for (int i = 0; i < mSwatchCount; i++) {
+            maxPopulation = Math.max(maxPopulation, mSwatchPopulation[i]);
+        }
+
+        int best = -1;
+        float bestScore = 0;
+        for (int i = 0; i < mSwatchCount; i++) {
+            float s = mSwatchSaturation[i];
+            float l = mSwatchLightness[i];
+            if (mSwatchUsed[i]
+                    || s < saturation[0] || s > saturation[2]
+                    || l < lightness[0] || l > lightness[2]) {
+                continue;
+            }
+
+            float score = WEIGHT_SATURATION * (1 - Math.abs(s - saturation[1]))
+                    + WEIGHT_LIGHTNESS * (1 - Math.abs(l - lightness[1]))
+                    + WEIGHT_POPULATION * (mSwatchPopulation[i] / (float) maxPopulation);
+            if (best < 0 || score > bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+
+        if (best < 0) {
+            out[category] = NO_COLOR;
+            return 0;
+        }
+
+        mSwatchUsed[best] = true;
+        out[category] = mSwatchRgb[best];
+        return 1;
+    }
+
+    // Color methods
+
+    /**
+     * To check whether the palette's default filter lets the color through
+     * Black, white and the colors near the skin tones are left out
+     * @param rgb color to be checked
+     * @param hsl scratch array for the hue, saturation and lightness
+     * @return true if the color can be a swatch
+     */
+    private static boolean isAllowed(int rgb, float[] hsl) {
+        colorToHsl(rgb, hsl);
+        boolean isBlack = hsl[2] <= 0.05f;
+        boolean isWhite = hsl[2] >= 0.95f;
+        boolean isNearRedILine = hsl[0] >= 10f && hsl[0] <= 37f && hsl[1] <= 0.82f;
+        return !isBlack && !isWhite && !isNearRedILine;
+    }
+
+    /**
+     * To quantize the color to 5 bits per channel
+     * @param argb color in ARGB format
+     * @return quantized color as 15 bits of red, green and blue
+     */
+    private static int quantize(int argb) {
+        int red = (argb >> (16 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        int green = (argb >> (8 + 8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        int blue = (argb >> (8 - QUANTIZE_WORD_WIDTH)) & QUANTIZE_WORD_MASK;
+        return red << (QUANTIZE_WORD_WIDTH * 2) | green << QUANTIZE_WORD_WIDTH | blue;
+    }
+
+    /**
+     * To get one component of the quantized color
+     * @param color quantized color
+     * @param component dimension of the color space
+     * @return value of the component, 5 bits
+     */
+    private static int getComponent(int color, int component) {
+        return (color >> (QUANTIZE_WORD_WIDTH * (COMPONENT_BLUE - component))) & QUANTIZE_WORD_MASK;
+    }
+
+    /**
+     * To get the opaque 8 bit color of the quantized color
+     * @param color quantized color
+     * @return color in ARGB format
+     */
+    private static int approximateToRgb888(int color) {
+        return approximateToRgb888(
+                getComponent(color, COMPONENT_RED),
+                getComponent(color, COMPONENT_GREEN),
+                getComponent(color, COMPONENT_BLUE));
+    }
+
+    /**
+     * To get the opaque 8 bit color of the quantized components
+     * @return color in ARGB format
+     */
+    private static int approximateToRgb888(int red, int green, int blue) {
+        int shift = 8 - QUANTIZE_WORD_WIDTH;
+        return 0xFF000000 | (red << shift) << 16 | (green << shift) << 8 | (blue << shift);
+    }
+
+    /**
+     * To convert the color to hue, saturation and lightness, the same way as the palette
+     * @param rgb color in ARGB format
+     * @param outHsl array receiving the hue in degrees, the saturation and the lightness
+     */
+    static void colorToHsl(int rgb, float[] outHsl) {
+        float red = ((rgb >> 16) & 0xFF) / 255f;
+        float green = ((rgb >> 8) & 0xFF) / 255f;
+        float blue = (rgb & 0xFF) / 255f;
+
+        float max = Math.max(red, Math.max(green, blue));
+        float min = Math.min(red, Math.min(green, blue));
+        float delta = max - min;
+
+        float hue;
+        float saturation;
+        float lightness = (max + min) / 2f;
+
+        if (max == min) {
+            // Monochromatic
+            hue = saturation = 0f;
+        } else {
+            if (max == red) {
+                hue = ((green - blue) / delta) % 6f;
+            } else if (max == green) {
+                hue = ((blue - red) / delta) + 2f;
+            } else {
+                hue = ((red - green) / delta) + 4f;
+            }
+            saturation = delta / (1f - Math.abs(2f * lightness - 1f));
+        }
+
+        hue = (hue * 60f) % 360f;
+        if (hue < 0) {
+            hue += 360f;
+        }
+
+        outHsl[0] = Math.max(0f, Math.min(hue, 360f));
+        outHsl[1] = Math.max(0f, Math.min(saturation, 1f));
+        outHsl[2] = Math.max(0f, Math.min(lightness, 1f));
+    }
+}
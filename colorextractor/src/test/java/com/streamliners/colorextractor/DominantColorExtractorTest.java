@@ -0,0 +1,58 @@
+package com.streamliners.colorextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for the dominant color extractor
+ */
+public class DominantColorExtractorTest {
+    @Test
+    public void extract_findsVibrantAndMutedColors() {
+        // Half saturated blue, half greyish blue
+        int[] pixels = new int[200];
+        Arrays.fill(pixels, 0, 100, 0xFF1060F0);
+        Arrays.fill(pixels, 100, 200, 0xFF607080);
+        int[] out = new int[DominantColorExtractor.CATEGORY_COUNT];
+
+        int found = new DominantColorExtractor().extract(pixels, 0, pixels.length, out);
+
+        assertEquals(2, found);
+        assertEquals(0xFF1060F0, out[DominantColorExtractor.VIBRANT]);
+        assertEquals(0xFF607080, out[DominantColorExtractor.MUTED]);
+        assertEquals(DominantColorExtractor.NO_COLOR, out[DominantColorExtractor.LIGHT_VIBRANT]);
+    }
+
+    @Test
+    public void extract_ignoresBlackAndWhite() {
+        int[] pixels = new int[100];
+        Arrays.fill(pixels, 0, 50, 0xFF000000);
+        Arrays.fill(pixels, 50, 100, 0xFFFFFFFF);
+        int[] out = new int[DominantColorExtractor.CATEGORY_COUNT];
+
+        assertEquals(0, new DominantColorExtractor().extract(pixels, 0, pixels.length, out));
+    }
+
+    @Test
+    public void extract_reusedGivesSameColors() {
+        DominantColorExtractor extractor = new DominantColorExtractor();
+        Random random = new Random(7);
+        int[] pixels = new int[64 * 64];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        int[] first = new int[DominantColorExtractor.CATEGORY_COUNT];
+        int[] second = new int[DominantColorExtractor.CATEGORY_COUNT];
+
+        extractor.extract(pixels, 0, pixels.length, first);
+        extractor.extract(new int[]{0xFF00FF00}, 0, 1, second);
+        extractor.extract(pixels, 0, pixels.length, second);
+
+        assertArrayEquals(first, second);
+        assertTrue(first[DominantColorExtractor.VIBRANT] != DominantColorExtractor.NO_COLOR);
+    }
+}